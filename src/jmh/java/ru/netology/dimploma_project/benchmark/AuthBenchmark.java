@@ -0,0 +1,84 @@
+package ru.netology.dimploma_project.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.netology.dimploma_project.model.Token;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.TokenRepository;
+import ru.netology.dimploma_project.service.AuthService;
+import ru.netology.dimploma_project.service.OperationMetrics;
+import ru.netology.dimploma_project.service.PasswordHasher;
+import ru.netology.dimploma_project.service.RevokedTokens;
+import ru.netology.dimploma_project.service.TokenCache;
+import ru.netology.dimploma_project.service.TokenSigner;
+import ru.netology.dimploma_project.service.UnknownUserCache;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// проверка токена на каждом запросе: непрозрачный токен с кэшем и без него (max-size=0 — всегда поход
+// в репозиторий) и подписанный токен, который проверяется HMAC без репозитория и кэша
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthBenchmark {
+    private static final int TOKENS = 1024;
+
+    @Param({"10000", "0"})
+    private int cacheSize;
+
+    @Param({"opaque", "signed"})
+    private String format;
+
+    private AuthService authService;
+    private String[] headers;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TokenRepository tokenRepository = InMemoryRepositories.tokens();
+        TokenSigner tokenSigner = "signed".equals(format)
+                ? new TokenSigner("k1:" + Base64.getEncoder().encodeToString(new byte[32]), "k1")
+                : new TokenSigner("", "");
+        RevokedTokens revokedTokens = new RevokedTokens(tokenRepository, tokenSigner);
+        authService = new AuthService(tokenRepository, null, new TokenCache(cacheSize, 300),
+                new OperationMetrics(new SimpleMeterRegistry()), tokenSigner, revokedTokens,
+                new PasswordHasher(1000, 1, 8), new UnknownUserCache(0, 0));
+
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("bench");
+
+        headers = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            Instant expiresAt = Instant.now().plus(1, ChronoUnit.DAYS);
+            Token token = new Token();
+            token.setToken(tokenSigner.isEnabled()
+                    ? tokenSigner.sign(user.getId(), user.getUsername(), expiresAt)
+                    : AuthService.generateNewToken());
+            token.setUser(user);
+            token.setExpiresAt(expiresAt);
+            tokenRepository.save(token);
+            headers[i] = "Bearer " + token.getToken();
+        }
+        revokedTokens.refresh();
+    }
+
+    @Benchmark
+    public Optional<User> findUserByToken() {
+        String header = headers[next];
+        next = (next + 1) & (TOKENS - 1);
+        return authService.findUserByToken(header);
+    }
+
+    @Benchmark
+    public String generateNewToken() {
+        return AuthService.generateNewToken();
+    }
+}
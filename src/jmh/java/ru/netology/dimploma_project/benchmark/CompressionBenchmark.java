@@ -0,0 +1,97 @@
+package ru.netology.dimploma_project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.service.FileServiceLocal;
+import ru.netology.dimploma_project.service.FileServiceLocalBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// загрузка и скачивание файла 4 MB с каждым кодеком: text — строки журнала (сжимаются),
+// random — случайные байты (отсекаются по энтропии и пишутся как есть)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    @Param({"none", "lz4", "zstd"})
+    private String codec;
+
+    @Param({"text", "random"})
+    private String content;
+
+    private Path storageDir;
+    private FileServiceLocal fileService;
+    private User owner;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("compression-bench");
+        fileService = new FileServiceLocalBuilder(InMemoryRepositories.files(), InMemoryRepositories.blobs(),
+                InMemoryRepositories.users(), storageDir.toString())
+                .compression(codec)
+                .build();
+
+        owner = new User();
+        owner.setId(1L);
+        owner.setUsername("bench");
+
+        data = "text".equals(content) ? logLines(FILE_SIZE) : randomBytes(FILE_SIZE);
+        fileService.uploadFile("download.bin", data, owner);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void upload() {
+        fileService.uploadFile("upload.bin", new ByteArrayInputStream(data), owner);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        try (InputStream in = fileService.downloadFileAsResource("download.bin", owner).getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static byte[] logLines(int size) {
+        Random random = new Random(42);
+        String[] levels = {"INFO", "DEBUG", "WARN", "ERROR"};
+        StringBuilder sb = new StringBuilder(size + 256);
+        while (sb.length() < size) {
+            sb.append("2026-01-").append(10 + random.nextInt(20)).append(" 12:").append(10 + random.nextInt(50))
+                    .append(':').append(10 + random.nextInt(50)).append(' ').append(levels[random.nextInt(4)])
+                    .append(" [worker-").append(random.nextInt(16)).append("] request ")
+                    .append(Long.toHexString(random.nextLong())).append(" completed in ")
+                    .append(random.nextInt(5000)).append(" ms, status=").append(random.nextBoolean() ? 200 : 404)
+                    .append('\n');
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
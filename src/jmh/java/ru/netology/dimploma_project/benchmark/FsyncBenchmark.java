@@ -0,0 +1,70 @@
+package ru.netology.dimploma_project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.service.FileServiceLocal;
+import ru.netology.dimploma_project.service.FileServiceLocalBuilder;
+import ru.netology.dimploma_project.service.LocalStorageBackend;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// цена каждой политики app.storage.fsync на загрузке через FileServiceLocal: none — только page cache,
+// file и directory ждут диска, batched переносит fsync в фоновый поток. Журнал намерений сбрасывается
+// при любой политике, поэтому разница между ними — стоимость fsync самих файлов
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FsyncBenchmark {
+    @Param({"none", "file", "directory", "batched"})
+    private String policy;
+
+    @Param({"4096", "1048576"})
+    private int fileSize;
+
+    private Path storageDir;
+    private LocalStorageBackend storage;
+    private FileServiceLocal fileService;
+    private User owner;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("fsync-bench");
+        storage = new LocalStorageBackend(storageDir.toString(), policy, 100);
+        fileService = new FileServiceLocalBuilder(InMemoryRepositories.files(), InMemoryRepositories.blobs(),
+                InMemoryRepositories.users(), storageDir.toString())
+                .storage(storage)
+                .build();
+
+        owner = new User();
+        owner.setId(1L);
+        owner.setUsername("bench");
+
+        data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.destroy();
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // заглушка репозитория не проверяет уникальность, поэтому одно и то же имя перезаписывается на каждой итерации
+    @Benchmark
+    public void upload() {
+        fileService.uploadFile("upload.bin", new ByteArrayInputStream(data), owner);
+    }
+}
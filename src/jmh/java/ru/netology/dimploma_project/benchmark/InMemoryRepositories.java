@@ -0,0 +1,133 @@
+package ru.netology.dimploma_project.benchmark;
+
+import org.springframework.data.domain.Pageable;
+import ru.netology.dimploma_project.dto.FileDto;
+import ru.netology.dimploma_project.dto.StorageUsageDto;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.model.Token;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.BlobRepository;
+import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.TokenRepository;
+import ru.netology.dimploma_project.repository.UserRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// репозитории-заглушки в памяти вместо PostgreSQL, чтобы бенчмарки запускались без БД и сети;
+// реализованы только методы, которые вызывают измеряемые сервисы
+final class InMemoryRepositories {
+    private static final char SEPARATOR = '\0';
+
+    private InMemoryRepositories() {
+    }
+
+    // файлы лежат в отсортированной карте "владелец\0имя" → FileEntity, как в индексе (owner_id, filename)
+    static FileRepository files() {
+        ConcurrentSkipListMap<String, FileEntity> rows = new ConcurrentSkipListMap<>();
+        AtomicLong ids = new AtomicLong();
+        return proxy(FileRepository.class, (proxy, method, args) -> switch (method.getName()) {
+            case "save" -> {
+                FileEntity entity = (FileEntity) args[0];
+                if (entity.getId() == null) {
+                    entity.setId(ids.incrementAndGet());
+                }
+                rows.values().remove(entity);
+                rows.put(key(entity.getOwner(), entity.getFilename()), entity);
+                yield entity;
+            }
+            case "flush" -> null;
+            case "findByOwnerAndFilename" -> Optional.ofNullable(rows.get(key((User) args[0], (String) args[1])));
+            case "delete" -> {
+                FileEntity entity = (FileEntity) args[0];
+                rows.remove(key(entity.getOwner(), entity.getFilename()));
+                yield null;
+            }
+            case "findAllByOwner" -> new ArrayList<>(ownerRows(rows, (User) args[0], "").values());
+            case "findPage" -> page(rows, (User) args[0], (String) args[1], (String) args[2], (Pageable) args[3]);
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    static TokenRepository tokens() {
+        Map<String, Token> rows = new ConcurrentHashMap<>();
+        return proxy(TokenRepository.class, (proxy, method, args) -> switch (method.getName()) {
+            case "save" -> {
+                Token token = (Token) args[0];
+                rows.put(token.getToken(), token);
+                yield token;
+            }
+            case "findByToken" -> Optional.ofNullable(rows.get((String) args[0]));
+            case "findRevokedTokens" -> rows.values().stream()
+                    .filter(t -> t.isRevoked() && t.getExpiresAt().isAfter((Instant) args[0]))
+                    .map(Token::getToken)
+                    .toList();
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    // квота не ограничена: счётчик занятого места не хранится, обновления только подтверждаются
+    static UserRepository users() {
+        return proxy(UserRepository.class, (proxy, method, args) -> switch (method.getName()) {
+            case "findUsage" -> Optional.of(new StorageUsageDto(0L, null));
+            case "charge", "release" -> 1;
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    // бенчмарки работают в режиме без дедупликации, BlobStore нужен только конструктору FileServiceLocal
+    static BlobRepository blobs() {
+        return proxy(BlobRepository.class, (proxy, method, args) -> {
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    // DTO создаются на каждую строку, как это делает конструкторное выражение в JPQL-запросе
+    private static List<FileDto> page(ConcurrentSkipListMap<String, FileEntity> rows, User owner,
+                                      String after, String prefixPattern, Pageable pageable) {
+        String prefix = prefixPattern.substring(0, prefixPattern.length() - 1)
+                .replace("\\%", "%").replace("\\_", "_").replace("\\\\", "\\");
+        List<FileDto> page = new ArrayList<>(pageable.getPageSize());
+        for (FileEntity entity : ownerRows(rows, owner, after).values()) {
+            if (page.size() == pageable.getPageSize()) {
+                break;
+            }
+            if (entity.getFilename().startsWith(prefix)) {
+                page.add(new FileDto(entity.getFilename(), entity.getSize()));
+            }
+        }
+        return page;
+    }
+
+    private static ConcurrentNavigableMap<String, FileEntity> ownerRows(
+            ConcurrentSkipListMap<String, FileEntity> rows, User owner, String after) {
+        return rows.subMap(key(owner, after), false, owner.getUsername() + (char) (SEPARATOR + 1), false);
+    }
+
+    private static String key(User owner, String filename) {
+        return owner.getUsername() + SEPARATOR + filename;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + " (in-memory)";
+                };
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+}
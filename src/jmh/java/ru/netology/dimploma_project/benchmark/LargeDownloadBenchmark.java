@@ -0,0 +1,86 @@
+package ru.netology.dimploma_project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.service.FileServiceLocal;
+import ru.netology.dimploma_project.service.FileServiceLocalBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// отдача большого файла целиком и Range-запросом: чтение через FileChannel (mmapThreshold=0)
+// и через отображение в память; для сравнения аллокаций запускать с -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LargeDownloadBenchmark {
+    private static final int FILE_SIZE = 128 * 1024 * 1024;
+    private static final long RANGE_START = FILE_SIZE / 2;
+    private static final long RANGE_LENGTH = 16 * 1024 * 1024;
+
+    @Param({"0", "8388608"})
+    private long mmapThreshold;
+
+    private Path storageDir;
+    private FileServiceLocal fileService;
+    private User owner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("large-download-bench");
+        fileService = new FileServiceLocalBuilder(InMemoryRepositories.files(), InMemoryRepositories.blobs(),
+                InMemoryRepositories.users(), storageDir.toString())
+                .mmapThreshold(mmapThreshold)
+                .build();
+
+        owner = new User();
+        owner.setId(1L);
+        owner.setUsername("bench");
+
+        byte[] data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        fileService.uploadFile("large.bin", data, owner);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // так копирует тело ответа Spring: InputStream.transferTo в поток ответа
+    @Benchmark
+    public long download() throws IOException {
+        try (InputStream in = fileService.downloadFileAsResource("large.bin", owner).getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long downloadRange() throws IOException {
+        try (InputStream in = fileService.downloadFileAsResource("large.bin", owner).getInputStream()) {
+            in.skipNBytes(RANGE_START);
+            byte[] buffer = new byte[8192];
+            long remaining = RANGE_LENGTH;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    break;
+                }
+                remaining -= n;
+            }
+            return RANGE_LENGTH - remaining;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.netology.dimploma_project.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+import ru.netology.dimploma_project.controller.FileController;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.model.Token;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.TokenRepository;
+import ru.netology.dimploma_project.service.AuthService;
+import ru.netology.dimploma_project.service.FileServiceLocal;
+import ru.netology.dimploma_project.service.FileServiceLocalBuilder;
+import ru.netology.dimploma_project.service.OperationMetrics;
+import ru.netology.dimploma_project.service.PasswordHasher;
+import ru.netology.dimploma_project.service.QuotaService;
+import ru.netology.dimploma_project.service.RevokedTokens;
+import ru.netology.dimploma_project.service.TokenCache;
+import ru.netology.dimploma_project.service.TokenSigner;
+import ru.netology.dimploma_project.service.UnknownUserCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// FileController.listFiles целиком: проверка токена (как в AuthInterceptor), выборка страницы, построение FileDto и курсора;
+// сериализация в JSON остаётся за рамками — её выполняет Spring MVC после возврата из контроллера
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListBenchmark {
+    private static final int FILES = 10_000;
+
+    @Param({"10", "100", "1000"})
+    private int limit;
+
+    private FileController controller;
+    private AuthService authService;
+    private String tokenValue;
+    private Path storageDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("bench");
+
+        FileRepository fileRepository = InMemoryRepositories.files();
+        for (int i = 0; i < FILES; i++) {
+            FileEntity entity = new FileEntity();
+            entity.setId((long) i);
+            entity.setFilename(String.format("file-%05d.txt", i));
+            entity.setSize((long) i * 1024);
+            entity.setStoragePath("bench/" + entity.getFilename());
+            entity.setOwner(owner);
+            fileRepository.save(entity);
+        }
+
+        TokenRepository tokenRepository = InMemoryRepositories.tokens();
+        Token token = new Token();
+        token.setToken(AuthService.generateNewToken());
+        token.setUser(owner);
+        token.setExpiresAt(Instant.now().plus(1, ChronoUnit.DAYS));
+        tokenRepository.save(token);
+        tokenValue = token.getToken();
+
+        storageDir = Files.createTempDirectory("list-bench");
+
+        FileServiceLocal fileService = new FileServiceLocalBuilder(fileRepository, InMemoryRepositories.blobs(),
+                InMemoryRepositories.users(), storageDir.toString())
+                .build();
+        TokenSigner tokenSigner = new TokenSigner("", "");
+        AuthService authService = new AuthService(tokenRepository, null, new TokenCache(100, 300),
+                new OperationMetrics(new SimpleMeterRegistry()), tokenSigner, new RevokedTokens(tokenRepository, tokenSigner),
+                new PasswordHasher(1000, 1, 8), new UnknownUserCache(0, 0));
+        this.authService = authService;
+        controller = new FileController(fileService,
+                new QuotaService(InMemoryRepositories.users(), 0), 1000, 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<?> listFirstPage() {
+        return controller.listFiles(authService.authenticate(tokenValue).orElseThrow(), limit, null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> listWithPrefix() {
+        return controller.listFiles(authService.authenticate(tokenValue).orElseThrow(), limit, null, "file-0");
+    }
+}
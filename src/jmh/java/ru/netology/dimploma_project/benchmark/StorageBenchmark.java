@@ -0,0 +1,98 @@
+package ru.netology.dimploma_project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.service.FileServiceLocal;
+import ru.netology.dimploma_project.service.FileServiceLocalBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// загрузка, скачивание и переименование через FileServiceLocal на локальном диске для разных размеров файла;
+// cacheBytes > 0 включает кэш чтения (файлы до 1 MB), скачивание одного и того же файла идёт из него;
+// в раскладке sharded переименование не трогает диск
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    @Param({"1024", "1048576", "16777216"})
+    private int fileSize;
+
+    @Param({"0", "67108864"})
+    private long cacheBytes;
+
+    @Param({"flat", "sharded"})
+    private String layout;
+
+    private Path storageDir;
+    private FileServiceLocal fileService;
+    private User owner;
+    private byte[] data;
+    private boolean renamed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageDir = Files.createTempDirectory("storage-bench");
+        fileService = new FileServiceLocalBuilder(InMemoryRepositories.files(), InMemoryRepositories.blobs(),
+                InMemoryRepositories.users(), storageDir.toString())
+                .readCache(cacheBytes, 1048576)
+                .layout(layout)
+                .build();
+
+        owner = new User();
+        owner.setId(1L);
+        owner.setUsername("bench");
+
+        data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        fileService.uploadFile("download.bin", data, owner);
+        fileService.uploadFile("rename-a.bin", data, owner);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // заглушка репозитория не проверяет уникальность, поэтому одно и то же имя перезаписывается на каждой итерации
+    @Benchmark
+    public void upload() {
+        fileService.uploadFile("upload.bin", new ByteArrayInputStream(data), owner);
+    }
+
+    @Benchmark
+    public long downloadStream() throws IOException {
+        try (InputStream in = fileService.downloadFileAsResource("download.bin", owner).getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public void downloadBytes(Blackhole bh) {
+        bh.consume(fileService.downloadFile("download.bin", owner));
+    }
+
+    @Benchmark
+    public void rename() {
+        if (renamed) {
+            fileService.renameFile("rename-b.bin", "rename-a.bin", owner);
+        } else {
+            fileService.renameFile("rename-a.bin", "rename-b.bin", owner);
+        }
+        renamed = !renamed;
+    }
+}
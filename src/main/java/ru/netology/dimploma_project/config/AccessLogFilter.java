@@ -0,0 +1,49 @@
+package ru.netology.dimploma_project.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.StringMapMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// журнал доступа: одна структурированная запись на запрос с длительностью и статусом вместо
+// нескольких INFO-строк из контроллера и сервиса; формат задаётся в log4j2.xml (логгер ACCESS)
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "app.access-log.enabled", havingValue = "true", matchIfMissing = true)
+public class AccessLogFilter extends OncePerRequestFilter {
+    private static final Logger accessLogger = LogManager.getLogger("ACCESS");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (accessLogger.isInfoEnabled()) {
+                StringMapMessage message = new StringMapMessage(8)
+                        .with("method", request.getMethod())
+                        .with("path", request.getRequestURI())
+                        .with("status", response.getStatus())
+                        .with("duration_us", (System.nanoTime() - start) / 1_000)
+                        .with("remote", request.getRemoteAddr());
+                String length = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+                if (length != null) {
+                    message.with("bytes", Long.parseLong(length));
+                }
+                accessLogger.info(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.netology.dimploma_project.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
+import ru.netology.dimploma_project.service.AuthService;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// проверка auth-token один раз на запрос для обработчиков с параметром AuthPrincipal:
+// пользователь кладётся в атрибут запроса, отказ пишется готовыми байтами без сериализации Map
+@Component
+public class AuthInterceptor implements HandlerInterceptor {
+    public static final String TOKEN_HEADER = "auth-token";
+    static final String PRINCIPAL_ATTRIBUTE = AuthInterceptor.class.getName() + ".principal";
+
+    private static final byte[] MISSING_TOKEN_BODY = errorBody("Missing auth-token header");
+    private static final byte[] INVALID_TOKEN_BODY = errorBody("Invalid or expired token");
+
+    private static final Logger logger = LogManager.getLogger(AuthInterceptor.class);
+
+    private final AuthService authService;
+    // набор обработчиков фиксирован, параметры каждого просматриваются один раз
+    private final Map<Method, Boolean> requiresPrincipal = new ConcurrentHashMap<>();
+
+    public AuthInterceptor(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (!(handler instanceof HandlerMethod method)
+                || !requiresPrincipal.computeIfAbsent(method.getMethod(), m -> requiresPrincipal(method))) {
+            return true;
+        }
+
+        String tokenValue = request.getHeader(TOKEN_HEADER);
+        if (tokenValue == null || tokenValue.isBlank()) {
+            logger.warn("{} {} отказ — отсутствует токен", request.getMethod(), request.getRequestURI());
+            return reject(response, MISSING_TOKEN_BODY);
+        }
+
+        Optional<AuthPrincipal> principal = authService.authenticate(tokenValue);
+        if (principal.isEmpty()) {
+            logger.warn("{} {} отказ — токен недействителен", request.getMethod(), request.getRequestURI());
+            return reject(response, INVALID_TOKEN_BODY);
+        }
+        request.setAttribute(PRINCIPAL_ATTRIBUTE, principal.get());
+        return true;
+    }
+
+    private static boolean requiresPrincipal(HandlerMethod method) {
+        for (MethodParameter parameter : method.getMethodParameters()) {
+            if (parameter.getParameterType() == AuthPrincipal.class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean reject(HttpServletResponse response, byte[] body) throws IOException {
+        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        return false;
+    }
+
+    // сообщения — константы без символов, требующих экранирования в JSON
+    private static byte[] errorBody(String message) {
+        return ("{\"message\":\"" + message + "\",\"id\":401}").getBytes(StandardCharsets.UTF_8);
+    }
+}
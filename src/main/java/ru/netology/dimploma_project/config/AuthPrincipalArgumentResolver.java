@@ -0,0 +1,31 @@
+package ru.netology.dimploma_project.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
+
+// отдаёт обработчику пользователя, найденного AuthInterceptor, без повторной проверки токена
+public class AuthPrincipalArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.getParameterType() == AuthPrincipal.class;
+    }
+
+    @Override
+    public AuthPrincipal resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                         NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Object principal = webRequest.getAttribute(AuthInterceptor.PRINCIPAL_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (principal == null) {
+            // интерцептор пропускает в обработчик с AuthPrincipal только проверенные запросы
+            throw new IllegalStateException("Запрос не прошёл AuthInterceptor: "
+                    + webRequest.getNativeRequest(HttpServletRequest.class).getRequestURI());
+        }
+        return (AuthPrincipal) principal;
+    }
+}
@@ -0,0 +1,176 @@
+package ru.netology.dimploma_project.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.netology.dimploma_project.service.ChecksumScrubber;
+import ru.netology.dimploma_project.service.IntentJournal;
+import ru.netology.dimploma_project.service.LayoutMigrator;
+import ru.netology.dimploma_project.service.LocalStorageBackend;
+import ru.netology.dimploma_project.service.LoginRateLimiter;
+import ru.netology.dimploma_project.service.OrphanSweeper;
+import ru.netology.dimploma_project.service.PasswordHasher;
+import ru.netology.dimploma_project.service.ReadCache;
+import ru.netology.dimploma_project.service.RevokedTokens;
+import ru.netology.dimploma_project.service.TokenCache;
+import ru.netology.dimploma_project.service.TokenReaper;
+import ru.netology.dimploma_project.service.UnknownUserCache;
+
+// счётчики, которые компоненты ведут сами, публикуются в реестр без изменения самих компонентов;
+// метрики пула Hikari и http.server.requests регистрирует Spring Boot Actuator
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    MeterBinder tokenCacheMetrics(TokenCache tokenCache) {
+        return registry -> {
+            FunctionCounter.builder("auth.token.cache.requests", tokenCache, TokenCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("auth.token.cache.requests", tokenCache, TokenCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("auth.token.cache.evictions", tokenCache, TokenCache::getEvictions)
+                    .register(registry);
+            Gauge.builder("auth.token.cache.size", tokenCache, TokenCache::size)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder readCacheMetrics(ReadCache readCache) {
+        return registry -> {
+            FunctionCounter.builder("storage.read.cache.requests", readCache, ReadCache::getHits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("storage.read.cache.requests", readCache, ReadCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("storage.read.cache.evictions", readCache, ReadCache::getEvictions)
+                    .register(registry);
+            FunctionCounter.builder("storage.read.cache.rejections", readCache, ReadCache::getRejections)
+                    .description("Файлы, не допущенные в кэш: реже читаются, чем те, что пришлось бы вытеснить")
+                    .register(registry);
+            Gauge.builder("storage.read.cache.hit.ratio", readCache, ReadCache::hitRatio)
+                    .register(registry);
+            Gauge.builder("storage.read.cache.size", readCache, ReadCache::size)
+                    .register(registry);
+            Gauge.builder("storage.read.cache.bytes", readCache, ReadCache::bytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+
+    // ChecksumScrubber может быть отключён свойством app.storage.scrubber.enabled
+    @Bean
+    MeterBinder scrubberMetrics(ObjectProvider<ChecksumScrubber> scrubber) {
+        return registry -> scrubber.ifAvailable(s -> {
+            FunctionCounter.builder("storage.scrubber.files", s, ChecksumScrubber::getVerified)
+                    .tag("result", "ok")
+                    .register(registry);
+            FunctionCounter.builder("storage.scrubber.files", s, ChecksumScrubber::getCorrupted)
+                    .tag("result", "corrupted")
+                    .register(registry);
+            FunctionCounter.builder("storage.scrubber.files", s, ChecksumScrubber::getMissing)
+                    .tag("result", "missing")
+                    .register(registry);
+            FunctionCounter.builder("storage.scrubber.bytes", s, ChecksumScrubber::getBytesRead)
+                    .baseUnit("bytes")
+                    .register(registry);
+        });
+    }
+
+    // отношение записей к fsync показывает, сколько операций в среднем объединяет групповой сброс
+    @Bean
+    MeterBinder intentJournalMetrics(IntentJournal journal) {
+        return registry -> {
+            FunctionCounter.builder("storage.journal.records", journal, IntentJournal::getAppended)
+                    .register(registry);
+            FunctionCounter.builder("storage.journal.syncs", journal, IntentJournal::getSyncs)
+                    .description("Вызовы fsync журнала намерений")
+                    .register(registry);
+            Gauge.builder("storage.journal.pending", journal, IntentJournal::pendingCount)
+                    .register(registry);
+        };
+    }
+
+    // LocalStorageBackend создаётся только при app.storage.backend=local
+    @Bean
+    MeterBinder storageFsyncMetrics(ObjectProvider<LocalStorageBackend> storage) {
+        return registry -> storage.ifAvailable(local ->
+                FunctionCounter.builder("storage.fsync", local, LocalStorageBackend::getSyncs)
+                        .tag("policy", local.getFsyncPolicy().id())
+                        .register(registry));
+    }
+
+    // LayoutMigrator создаётся только при app.storage.layout-migration.enabled=true
+    @Bean
+    MeterBinder layoutMigratorMetrics(ObjectProvider<LayoutMigrator> migrator) {
+        return registry -> migrator.ifAvailable(m -> {
+            FunctionCounter.builder("storage.layout.migrated", m, LayoutMigrator::getMigrated)
+                    .register(registry);
+            FunctionCounter.builder("storage.layout.failed", m, LayoutMigrator::getFailed)
+                    .register(registry);
+        });
+    }
+
+    // OrphanSweeper может быть отключён свойством app.storage.orphan-sweeper.enabled
+    @Bean
+    MeterBinder orphanSweeperMetrics(ObjectProvider<OrphanSweeper> sweeper) {
+        return registry -> sweeper.ifAvailable(s -> {
+            FunctionCounter.builder("storage.orphans.found", s, OrphanSweeper::getOrphans)
+                    .tag("kind", "object")
+                    .register(registry);
+            FunctionCounter.builder("storage.orphans.found", s, OrphanSweeper::getTemporary)
+                    .tag("kind", "temporary")
+                    .register(registry);
+            FunctionCounter.builder("storage.orphans.runs", s, OrphanSweeper::getRuns)
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    MeterBinder revokedTokensMetrics(RevokedTokens revokedTokens) {
+        return registry -> Gauge.builder("auth.token.revoked.size", revokedTokens, RevokedTokens::size)
+                .description("Отозванные неистёкшие токены в фильтре на узле")
+                .register(registry);
+    }
+
+    @Bean
+    MeterBinder loginProtectionMetrics(LoginRateLimiter rateLimiter, PasswordHasher passwordHasher,
+                                       UnknownUserCache unknownUsers) {
+        return registry -> {
+            FunctionCounter.builder("auth.login.throttled", rateLimiter, LoginRateLimiter::getRejected)
+                    .description("Попытки входа, отклонённые лимитом")
+                    .tag("reason", "rate-limit")
+                    .register(registry);
+            FunctionCounter.builder("auth.login.throttled", passwordHasher, PasswordHasher::getRejected)
+                    .tag("reason", "hash-queue-full")
+                    .register(registry);
+            Gauge.builder("auth.login.rate.limit.keys", rateLimiter, LoginRateLimiter::size)
+                    .register(registry);
+            Gauge.builder("auth.password.hash.active", passwordHasher, PasswordHasher::active)
+                    .register(registry);
+            Gauge.builder("auth.password.hash.queued", passwordHasher, PasswordHasher::queued)
+                    .register(registry);
+            FunctionCounter.builder("auth.unknown.user.cache.hits", unknownUsers, UnknownUserCache::getHits)
+                    .register(registry);
+            Gauge.builder("auth.unknown.user.cache.size", unknownUsers, UnknownUserCache::size)
+                    .register(registry);
+        };
+    }
+
+    // TokenReaper может быть отключён свойством app.auth.token-reaper.enabled
+    @Bean
+    MeterBinder tokenReaperMetrics(ObjectProvider<TokenReaper> tokenReaper) {
+        return registry -> tokenReaper.ifAvailable(reaper -> {
+            FunctionCounter.builder("auth.token.reaper.reclaimed", reaper, TokenReaper::getReclaimed)
+                    .register(registry);
+            FunctionCounter.builder("auth.token.reaper.runs", reaper, TokenReaper::getRuns)
+                    .register(registry);
+        });
+    }
+}
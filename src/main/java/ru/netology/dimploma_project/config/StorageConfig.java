@@ -0,0 +1,44 @@
+package ru.netology.dimploma_project.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+
+// клиент S3 создаётся только при app.storage.backend=s3; endpoint задаётся для MinIO и других
+// совместимых хранилищ, без ключей используется стандартная цепочка учётных данных AWS
+@Configuration
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+public class StorageConfig {
+
+    @Bean
+    public S3Client s3Client(@Value("${app.storage.s3.endpoint:}") String endpoint,
+                             @Value("${app.storage.s3.region:us-east-1}") String region,
+                             @Value("${app.storage.s3.access-key:}") String accessKey,
+                             @Value("${app.storage.s3.secret-key:}") String secretKey,
+                             @Value("${app.storage.s3.path-style:true}") boolean pathStyle) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyle)
+                // контрольные суммы CRC в трейлерах запросов поддерживают не все S3-совместимые хранилища
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (!accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        return builder.build();
+    }
+}
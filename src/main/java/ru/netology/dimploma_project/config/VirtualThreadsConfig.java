@@ -0,0 +1,36 @@
+package ru.netology.dimploma_project.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// при spring.threads.virtual.enabled=true Tomcat и исполнители Spring работают на виртуальных потоках,
+// поэтому доступ к JDBC ограничивается семафором по размеру пула соединений
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfig {
+    private static final Logger logger = LogManager.getLogger(VirtualThreadsConfig.class);
+
+    @Bean
+    static BeanPostProcessor jdbcConcurrencyLimiter(
+            @Value("${app.jdbc.max-concurrency:10}") int maxConcurrency,
+            @Value("${app.jdbc.acquire-timeout-ms:30000}") long acquireTimeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConcurrencyLimitedDataSource)) {
+                    logger.info("Виртуальные потоки: доступ к '{}' ограничен {} соединениями", beanName, maxConcurrency);
+                    return new ConcurrencyLimitedDataSource(dataSource, maxConcurrency, acquireTimeoutMs);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,7 +1,9 @@
 package ru.netology.dimploma_project.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -12,21 +14,25 @@ import org.springframework.web.bind.annotation.RestController;
 import ru.netology.dimploma_project.dto.LoginRequest;
 import ru.netology.dimploma_project.model.Token;
 import ru.netology.dimploma_project.service.AuthService;
+import ru.netology.dimploma_project.service.LoginRateLimiter;
+import ru.netology.dimploma_project.service.LoginThrottledException;
 
 import java.util.Map;
 
 @RestController
 public class AuthController {
     private final AuthService authService;
+    private final LoginRateLimiter loginRateLimiter;
 
     private static final Logger logger = LogManager.getLogger(AuthController.class);
 
-    public AuthController(AuthService authService) {
+    public AuthController(AuthService authService, LoginRateLimiter loginRateLimiter) {
         this.authService = authService;
+        this.loginRateLimiter = loginRateLimiter;
     }
 
     @PostMapping(value = "/login", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest) {
+    public ResponseEntity<?> login(@RequestBody LoginRequest loginRequest, HttpServletRequest request) {
 
         logger.info("Запрос /login для пользователя '{}'",
                 loginRequest != null ? loginRequest.getLogin() : "null");
@@ -40,12 +46,22 @@ public class AuthController {
                     .body(Map.of("message", "login and password required", "id", 400));
         }
 
+        long retryAfter = loginRateLimiter.tryAcquire(loginRequest.getLogin(), request.getRemoteAddr());
+        if (retryAfter > 0) {
+            logger.warn("Вход пользователя '{}' с адреса {} отклонён — превышен лимит попыток",
+                    loginRequest.getLogin(), request.getRemoteAddr());
+            return tooManyRequests("Too many login attempts, try again later", retryAfter);
+        }
+
         try {
             Token token = authService.login(loginRequest.getLogin(), loginRequest.getPassword());
             logger.info("Пользователь '{}' успешно авторизован", loginRequest.getLogin());
 
             Map<String, String> res = Map.of("auth-token", token.getToken());
             return ResponseEntity.ok(res);
+        } catch (LoginThrottledException e) {
+            logger.warn("Вход пользователя '{}' отклонён — очередь проверки паролей заполнена", loginRequest.getLogin());
+            return tooManyRequests(e.getMessage(), e.getRetryAfterSeconds());
         } catch (IllegalArgumentException e) {
             logger.warn("Ошибка авторизации пользователя '{}': {}", loginRequest.getLogin(), e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -69,4 +85,10 @@ public class AuthController {
 
         return ResponseEntity.ok().build();
     }
+
+    private static ResponseEntity<?> tooManyRequests(String message, long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(Map.of("message", message, "id", 429));
+    }
 }
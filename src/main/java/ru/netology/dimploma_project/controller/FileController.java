@@ -2,57 +2,75 @@ package ru.netology.dimploma_project.controller;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
 import ru.netology.dimploma_project.dto.FileDto;
 import ru.netology.dimploma_project.model.FileEntity;
 import ru.netology.dimploma_project.model.User;
-import ru.netology.dimploma_project.repository.FileRepository;
-import ru.netology.dimploma_project.service.AuthService;
+import ru.netology.dimploma_project.service.ChecksummedResource;
+import ru.netology.dimploma_project.service.FileService;
 import ru.netology.dimploma_project.service.FileServiceLocal;
-
+import ru.netology.dimploma_project.service.QuotaService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 @RestController
 public class FileController {
-    private final FileServiceLocal fileService;
-    private final FileRepository fileRepository;
-    private final AuthService authService;
+    private final FileService fileService;
+    private final QuotaService quotaService;
 
     private static final Logger logger = LogManager.getLogger(FileServiceLocal.class);
 
-    public FileController(FileServiceLocal fileService, FileRepository fileRepository, AuthService authService) {
+    private final int maxPageSize;
+    private final int maxBatchSize;
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String DIGEST_HEADER = "Digest";
+    public static final String REPR_DIGEST_HEADER = "Repr-Digest";
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
+    public FileController(FileService fileService,
+                          QuotaService quotaService,
+                          @Value("${app.list.max-page-size:1000}") int maxPageSize,
+                          @Value("${app.batch.max-files:1000}") int maxBatchSize) {
         this.fileService = fileService;
-        this.fileRepository = fileRepository;
-        this.authService = authService;
+        this.quotaService = quotaService;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
     // загрузка файла
     @PostMapping(path = "/file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> uploadFile(
-            @RequestHeader(name = "auth-token", required = false) String tokenValue,
+            AuthPrincipal principal,
             @RequestParam("filename") String filename,
             @RequestPart("file") MultipartFile multipartFile) {
 
-        logger.info("UPLOAD попытка");
+        logger.debug("UPLOAD попытка");
 
-        if (tokenValue == null || tokenValue.isBlank()) {
-            logger.warn("UPLOAD отказ — отсутствует токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Missing auth-token header", "id", 401));
-        }
-
-        var userOpt = authService.findUserByToken(tokenValue);
-        if (userOpt.isEmpty()) {
-            logger.warn("UPLOAD отказ — токен недействителен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Invalid or expired token", "id", 401));
-        }
-        User user = userOpt.get();
+        User user = principal.toUser();
 
         if (filename == null || filename.isBlank()) {
             logger.warn("UPLOAD отказ — отсутствует filename");
@@ -72,14 +90,10 @@ public class FileController {
                     .body(Map.of("message", "File is required", "id", 400));
         }
 
-        if (fileRepository.findByOwnerAndFilename(user, filename).isPresent()) {
-            logger.warn("UPLOAD отказ — файл '{}' уже существует", filename);
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(Map.of("message", "File already exists", "id", 400));
-        }
-
         try {
-            fileService.uploadFile(filename, multipartFile.getBytes(), user);
+            // размер multipart-части известен заранее — отказываем до записи в хранилище
+            quotaService.checkAvailable(user, multipartFile.getSize());
+            fileService.uploadFile(filename, multipartFile.getInputStream(), user);
             logger.info("UPLOAD успех — файл '{}' загружен пользователем '{}'", filename, user.getUsername());
             return ResponseEntity.ok().build();
         } catch (IllegalArgumentException e) {
@@ -93,27 +107,61 @@ public class FileController {
         }
     }
 
+    // загрузка без передачи содержимого: файл создаётся из уже загруженного пользователем файла с тем же SHA-256.
+    // {"created": false} — такого содержимого нет, клиент загружает файл обычным POST /file
+    @PostMapping(path = "/file/copy", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> copyByChecksum(
+            AuthPrincipal principal,
+            @RequestParam("filename") String filename,
+            @RequestParam("sha256") String sha256) {
+
+        logger.debug("COPY попытка");
+
+        User user = principal.toUser();
+
+        if (filename == null || filename.isBlank()) {
+            logger.warn("COPY отказ — отсутствует filename");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Filename is required", "id", 400));
+        }
+
+        if (filename.contains("..") || filename.contains("/") || filename.contains("\\")) {
+            logger.warn("COPY отказ — неверное имя файла");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Invalid filename", "id", 400));
+        }
+
+        if (sha256 == null || !SHA256_HEX.matcher(sha256).matches()) {
+            logger.warn("COPY отказ — неверный sha256");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "sha256 must be 64 hex characters", "id", 400));
+        }
+
+        try {
+            boolean created = fileService.copyByChecksum(filename, sha256, user);
+            logger.info("COPY — файл '{}' пользователя '{}' {}", filename, user.getUsername(),
+                    created ? "создан из имеющегося содержимого" : "требует загрузки");
+            return ResponseEntity.ok(Map.of("created", created));
+        } catch (IllegalArgumentException e) {
+            logger.warn("COPY ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("COPY ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+
     // удаление файла
     @DeleteMapping(path = "/file")
     public ResponseEntity<?> deleteFile(
-            @RequestHeader(name = "auth-token", required = false) String tokenValue,
+            AuthPrincipal principal,
             @RequestParam("filename") String filename) {
 
-        logger.info("DELETE попытка");
+        logger.debug("DELETE попытка");
 
-        if (tokenValue == null || tokenValue.isBlank()) {
-            logger.warn("DELETE отказ — отсутствует токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Missing auth-token header", "id", 401));
-        }
-
-        var userOpt = authService.findUserByToken(tokenValue);
-        if (userOpt.isEmpty()) {
-            logger.warn("DELETE отказ — токен недействителен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Invalid or expired token", "id", 401));
-        }
-        User user = userOpt.get();
+        User user = principal.toUser();
 
         if (filename == null || filename.isBlank()) {
             logger.warn("DELETE отказ — пустое имя файла");
@@ -145,24 +193,14 @@ public class FileController {
     // скачивание файла
     @GetMapping(path = "/file")
     public ResponseEntity<?> getFile(
-            @RequestHeader(name = "auth-token", required = false) String tokenValue,
+            AuthPrincipal principal,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(name = HttpHeaders.IF_RANGE, required = false) String ifRange,
             @RequestParam("filename") String filename) {
 
-        logger.info("DOWNLOAD попытка");
-
-        if (tokenValue == null || tokenValue.isBlank()) {
-            logger.warn("DOWNLOAD отказ — отсутствует токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Missing auth-token header", "id", 401));
-        }
+        logger.debug("DOWNLOAD попытка");
 
-        var userOpt = authService.findUserByToken(tokenValue);
-        if (userOpt.isEmpty()) {
-            logger.warn("DOWNLOAD отказ — токен недействителен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Invalid or expired token", "id", 401));
-        }
-        User user = userOpt.get();
+        User user = principal.toUser();
 
         if (filename == null || filename.isBlank()) {
             logger.warn("DOWNLOAD отказ — пустое имя файла");
@@ -177,15 +215,40 @@ public class FileController {
         }
 
         try {
-            byte[] data = fileService.downloadFile(filename, user);
-            logger.info("DOWNLOAD успех — '{}' ({} bytes)", filename, data.length);
+            Resource resource = fileService.downloadFileAsResource(filename, user);
+            long length = resource.contentLength();
+            long lastModified = resource.lastModified();
+            String sha256 = null;
+            Long crc32c = null;
+            if (resource instanceof ChecksummedResource checksummed) {
+                sha256 = checksummed.getSha256();
+                crc32c = checksummed.getCrc32c();
+            }
+            // ETag по SHA-256 не меняется при переименовании и совпадает у одинаковых файлов
+            String etag = sha256 != null ? "\"" + sha256 + "\"" : etagOf(length, lastModified);
+            logger.debug("DOWNLOAD успех — '{}' ({} bytes)", filename, length);
+
+            // Range обрабатывает Spring (206 / multipart/byteranges / 416), 304 по ETag и Last-Modified — тоже.
+            // If-Range Spring не проверяет: если валидатор устарел, отдаём файл целиком,
+            // а InputStreamResource отключает автоматическую обработку Range
+            Resource body = resource;
+            HttpHeaders headers = new HttpHeaders();
+            if (sha256 != null) {
+                headers.set(DIGEST_HEADER, digestOf(sha256, crc32c));
+                headers.set(REPR_DIGEST_HEADER, "sha-256=:" + base64Sha256(sha256) + ":");
+            }
+            if (range != null && ifRange != null && !ifRangeMatches(ifRange, etag, lastModified)) {
+                body = new InputStreamResource(resource.getInputStream());
+                headers.setContentLength(length);
+            }
 
-            String contentType = "application/octet-stream";
             return ResponseEntity.ok()
+                    .headers(headers)
                     .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
-                    .contentLength(data.length)
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(data);
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(body);
         } catch (IllegalArgumentException e) {
             logger.warn("DOWNLOAD ошибка: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -200,25 +263,13 @@ public class FileController {
     // переименование файла
     @PutMapping(path = "/file", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> renameFile(
-            @RequestHeader(name = "auth-token", required = false) String tokenValue,
+            AuthPrincipal principal,
             @RequestParam("filename") String filename,
             @RequestBody Map<String, String> body) {
 
-        logger.info("RENAME попытка");
-
-        if (tokenValue == null || tokenValue.isBlank()) {
-            logger.warn("RENAME отказ — отсутствует токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Missing auth-token header", "id", 401));
-        }
+        logger.debug("RENAME попытка");
 
-        var userOpt = authService.findUserByToken(tokenValue);
-        if (userOpt.isEmpty()) {
-            logger.warn("RENAME отказ — недействительный токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Invalid or expired token", "id", 401));
-        }
-        User user = userOpt.get();
+        User user = principal.toUser();
 
         if (filename == null || filename.isBlank()) {
             logger.warn("RENAME отказ — пустое имя файла");
@@ -264,39 +315,220 @@ public class FileController {
     //получение всех файлов
     @GetMapping(path = "/list", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> listFiles(
-            @RequestHeader(name = "auth-token", required = false) String tokenValue,
-            @RequestParam(name = "limit", required = false) Integer limit) {
+            AuthPrincipal principal,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "prefix", required = false) String prefix) {
+
+        logger.debug("LIST попытка");
+
+        User user = principal.toUser();
+
+        try {
+            String after = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor);
+            if (limit == null) {
+                List<FileDto> all = listAll(user, after, prefix);
+                logger.debug("LIST успех — {} файлов", all.size());
+                return ResponseEntity.ok(all);
+            }
+            int pageSize = Math.max(0, Math.min(limit, maxPageSize));
+
+            // запрашиваем на одну запись больше, чтобы понять, есть ли следующая страница
+            List<FileDto> all = fileService.getFilesPage(user, after, prefix, pageSize + 1);
+            HttpHeaders headers = new HttpHeaders();
+            if (all.size() > pageSize) {
+                all = all.subList(0, pageSize);
+                if (!all.isEmpty()) {
+                    headers.set(NEXT_CURSOR_HEADER, encodeCursor(all.get(all.size() - 1).getFilename()));
+                }
+            }
+            logger.debug("LIST успех — {} файлов", all.size());
+            return ResponseEntity.ok().headers(headers).body(all);
+        } catch (IllegalArgumentException e) {
+            logger.warn("LIST ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("LIST ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+
+    // клиент без limit не знает о пагинации и получает весь список; из БД он читается страницами
+    // по max-page-size, каждая — отдельный запрос по индексу (owner_id, filename)
+    private List<FileDto> listAll(User user, String after, String prefix) {
+        int pageSize = Math.max(1, maxPageSize);
+        List<FileDto> all = new ArrayList<>();
+        List<FileDto> page;
+        do {
+            page = fileService.getFilesPage(user, after, prefix, pageSize);
+            all.addAll(page);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getFilename();
+            }
+        } while (page.size() == pageSize);
+        return all;
+    }
+
+    // занятое место и квота пользователя
+    @GetMapping(path = "/usage", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getUsage(
+            AuthPrincipal principal) {
 
-        logger.info("LIST попытка");
+        logger.debug("USAGE попытка");
 
-        if (tokenValue == null || tokenValue.isBlank()) {
-            logger.warn("LIST отказ — отсутствует токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Missing auth-token header", "id", 401));
+        try {
+            return ResponseEntity.ok(quotaService.getUsage(principal.toUser()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("USAGE ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("USAGE ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
         }
+    }
+
+    // пакетное удаление: {"filenames": [...]} -> {"deleted": [...], "missing": [...]}
+    @PostMapping(path = "/files/delete", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> deleteFiles(
+            AuthPrincipal principal,
+            @RequestBody(required = false) Map<String, List<String>> body) {
+
+        logger.debug("BATCH DELETE попытка");
 
-        var userOpt = authService.findUserByToken(tokenValue);
-        if (userOpt.isEmpty()) {
-            logger.warn("LIST отказ — недействительный токен");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("message", "Invalid or expired token", "id", 401));
+        User user = principal.toUser();
+
+        String error = validateBatch(body == null ? null : body.get("filenames"));
+        if (error != null) {
+            logger.warn("BATCH DELETE отказ — {}", error);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", error, "id", 400));
         }
-        User user = userOpt.get();
+        Set<String> filenames = new LinkedHashSet<>(body.get("filenames"));
 
         try {
-            List<FileEntity> files = fileService.getAllFiles(user);
-            List<FileDto> all = files.stream()
-                    .map(f -> new FileDto(f.getFilename(), f.getSize()))
-                    .toList();
-            if (limit != null && limit < all.size()) {
-                all = all.subList(0, Math.max(0, limit));
-            }
-            logger.info("LIST успех — {} файлов", all.size());
-            return ResponseEntity.ok(all);
+            List<String> deleted = fileService.deleteFiles(filenames, user);
+            Set<String> missing = new LinkedHashSet<>(filenames);
+            deleted.forEach(missing::remove);
+            logger.info("BATCH DELETE успех — удалено {}, не найдено {}", deleted.size(), missing.size());
+            return ResponseEntity.ok(Map.of("deleted", deleted, "missing", missing));
+        } catch (IllegalArgumentException e) {
+            logger.warn("BATCH DELETE ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
         } catch (Exception e) {
-            logger.error("LIST ошибка сервера", e);
+            logger.error("BATCH DELETE ошибка сервера", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("message", "Internal server error", "id", 500));
         }
     }
+
+    // скачивание нескольких файлов одним ZIP-архивом: архив пишется прямо в ответ по мере чтения файлов,
+    // без сборки в памяти или во временном файле
+    @GetMapping(path = "/files/zip")
+    public ResponseEntity<?> downloadZip(
+            AuthPrincipal principal,
+            @RequestParam(name = "filename", required = false) List<String> filenames,
+            HttpServletResponse response) {
+
+        logger.debug("ZIP попытка");
+
+        User user = principal.toUser();
+
+        String error = validateBatch(filenames);
+        if (error != null) {
+            logger.warn("ZIP отказ — {}", error);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", error, "id", 400));
+        }
+
+        List<FileEntity> files;
+        try {
+            files = fileService.findFiles(new LinkedHashSet<>(filenames), user);
+        } catch (IllegalArgumentException e) {
+            logger.warn("ZIP ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("ZIP ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+
+        // после начала передачи статус уже не изменить: ошибка только логируется, клиент получит оборванный архив
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"");
+        try {
+            fileService.writeZip(files, response.getOutputStream());
+            logger.info("ZIP успех — {} файлов", files.size());
+        } catch (Exception e) {
+            logger.error("ZIP ошибка при передаче архива", e);
+        }
+        return null;
+    }
+
+    private String validateBatch(List<String> filenames) {
+        if (filenames == null || filenames.isEmpty()) {
+            return "Filenames are required";
+        }
+        if (filenames.size() > maxBatchSize) {
+            return "Too many files, maximum is " + maxBatchSize;
+        }
+        for (String filename : filenames) {
+            if (filename == null || filename.isBlank()
+                    || filename.contains("..") || filename.contains("/") || filename.contains("\\")) {
+                return "Invalid filename";
+            }
+        }
+        return null;
+    }
+
+    // Digest (RFC 3230) и Repr-Digest (RFC 9530) описывают файл целиком, в том числе в ответе 206
+    private static String digestOf(String sha256, Long crc32c) {
+        String digest = "sha-256=" + base64Sha256(sha256);
+        if (crc32c != null) {
+            byte[] crc = ByteBuffer.allocate(4).putInt((int) (long) crc32c).array();
+            digest += ", crc32c=" + Base64.getEncoder().encodeToString(crc);
+        }
+        return digest;
+    }
+
+    private static String base64Sha256(String sha256) {
+        return Base64.getEncoder().encodeToString(HexFormat.of().parseHex(sha256));
+    }
+
+    private static String etagOf(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    // If-Range содержит либо сильный ETag, либо дату; слабые ETag никогда не совпадают
+    private static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(etag);
+        }
+        try {
+            long since = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified / 1000 == since / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // курсор — последнее имя файла на странице в base64url, чтобы клиент передавал его как есть
+    private static String encodeCursor(String filename) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(filename.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
 }
@@ -0,0 +1,169 @@
+package ru.netology.dimploma_project.controller;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
+import ru.netology.dimploma_project.model.UploadSession;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.service.UploadSessionService;
+
+import java.io.InputStream;
+import java.util.Map;
+
+@RestController
+public class UploadSessionController {
+    private final UploadSessionService uploadSessionService;
+
+    private static final Logger logger = LogManager.getLogger(UploadSessionController.class);
+
+    public UploadSessionController(UploadSessionService uploadSessionService) {
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    // создание сессии загрузки по частям
+    @PostMapping(path = "/upload", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> createSession(
+            AuthPrincipal principal,
+            @RequestParam("filename") String filename,
+            @RequestParam(name = "chunks", required = false) Integer totalChunks) {
+
+        logger.debug("UPLOAD-SESSION попытка");
+
+        User user = principal.toUser();
+
+        if (filename == null || filename.isBlank()) {
+            logger.warn("UPLOAD-SESSION отказ — отсутствует filename");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Filename is required", "id", 400));
+        }
+
+        if (filename.contains("..") || filename.contains("/") || filename.contains("\\")) {
+            logger.warn("UPLOAD-SESSION отказ — неверное имя файла");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Invalid filename", "id", 400));
+        }
+
+        try {
+            UploadSession session = uploadSessionService.createSession(filename, totalChunks, user);
+            logger.info("UPLOAD-SESSION успех — сессия '{}' для файла '{}'", session.getId(), filename);
+            return ResponseEntity.ok(Map.of("sessionId", session.getId(),
+                    "expiresAt", session.getExpiresAt().toString()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("UPLOAD-SESSION ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("UPLOAD-SESSION ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+
+    // загрузка одной части; тело запроса — сырые байты части
+    @PutMapping(path = "/upload/{sessionId}/chunk/{index}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> uploadChunk(
+            AuthPrincipal principal,
+            @PathVariable("sessionId") String sessionId,
+            @PathVariable("index") int index,
+            InputStream body) {
+
+        logger.debug("UPLOAD-CHUNK попытка");
+
+        User user = principal.toUser();
+
+        try {
+            uploadSessionService.writeChunk(sessionId, index, body, user);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("UPLOAD-CHUNK ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("UPLOAD-CHUNK ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+
+    // состояние сессии: какие части уже получены
+    @GetMapping(path = "/upload/{sessionId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getSession(
+            AuthPrincipal principal,
+            @PathVariable("sessionId") String sessionId) {
+
+        logger.debug("UPLOAD-STATUS попытка");
+
+        User user = principal.toUser();
+
+        try {
+            UploadSession session = uploadSessionService.getSession(sessionId, user);
+            var received = uploadSessionService.getReceivedChunks(sessionId, user);
+            return ResponseEntity.ok(Map.of(
+                    "sessionId", session.getId(),
+                    "filename", session.getFilename(),
+                    "received", received,
+                    "expiresAt", session.getExpiresAt().toString()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("UPLOAD-STATUS ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("UPLOAD-STATUS ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+
+    // сборка файла из полученных частей
+    @PostMapping(path = "/upload/{sessionId}/complete", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> complete(
+            AuthPrincipal principal,
+            @PathVariable("sessionId") String sessionId) {
+
+        logger.debug("UPLOAD-COMPLETE попытка");
+
+        User user = principal.toUser();
+
+        try {
+            uploadSessionService.complete(sessionId, user);
+            logger.info("UPLOAD-COMPLETE успех — сессия '{}'", sessionId);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("UPLOAD-COMPLETE ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("UPLOAD-COMPLETE ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+
+    // отмена сессии и удаление полученных частей
+    @DeleteMapping(path = "/upload/{sessionId}")
+    public ResponseEntity<?> abort(
+            AuthPrincipal principal,
+            @PathVariable("sessionId") String sessionId) {
+
+        logger.debug("UPLOAD-ABORT попытка");
+
+        User user = principal.toUser();
+
+        try {
+            uploadSessionService.abort(sessionId, user);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("UPLOAD-ABORT ошибка: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", e.getMessage(), "id", 400));
+        } catch (Exception e) {
+            logger.error("UPLOAD-ABORT ошибка сервера", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Internal server error", "id", 500));
+        }
+    }
+}
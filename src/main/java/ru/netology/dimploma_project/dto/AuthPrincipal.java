@@ -0,0 +1,19 @@
+package ru.netology.dimploma_project.dto;
+
+import ru.netology.dimploma_project.model.User;
+
+// аутентифицированный пользователь запроса: только id и имя, без JPA-сущности и её сессии
+public record AuthPrincipal(long id, String username) {
+
+    public static AuthPrincipal of(User user) {
+        return new AuthPrincipal(user.getId(), user.getUsername());
+    }
+
+    // сервисы работают с User: для запросов по владельцу достаточно отсоединённого объекта с id
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+}
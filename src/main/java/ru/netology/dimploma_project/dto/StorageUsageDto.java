@@ -0,0 +1,32 @@
+package ru.netology.dimploma_project.dto;
+
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+public class StorageUsageDto {
+    private Long used;
+    // null — квота не ограничена
+    private Long quota;
+
+    public StorageUsageDto(Long used, Long quota) {
+        this.used = used;
+        this.quota = quota;
+    }
+
+    public Long getUsed() {
+        return used;
+    }
+
+    public void setUsed(Long used) {
+        this.used = used;
+    }
+
+    public Long getQuota() {
+        return quota;
+    }
+
+    public void setQuota(Long quota) {
+        this.quota = quota;
+    }
+}
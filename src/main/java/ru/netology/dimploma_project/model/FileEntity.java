@@ -4,7 +4,8 @@ import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
-@Table(name = "files")
+@Table(name = "files", uniqueConstraints =
+        @UniqueConstraint(name = "ux_files_owner_filename", columnNames = {"owner_id", "filename"}))
 @NoArgsConstructor
 @Data
 @AllArgsConstructor
@@ -22,6 +23,21 @@ public class FileEntity {
     @Column(nullable = false)
     private Long size;
 
+    @Column(nullable = false)
+    private Long storedSize;
+
+    @Column(nullable = false, length = 16)
+    private String codec = "none";
+
+    @Column(length = 64)
+    private String blobHash;
+
+    // суммы несжатого содержимого; null у файлов, загруженных до их появления
+    @Column(length = 64)
+    private String sha256;
+
+    private Long crc32c;
+
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
@@ -58,6 +74,30 @@ public class FileEntity {
         this.size = size;
     }
 
+    public Long getStoredSize() {
+        return storedSize;
+    }
+
+    public void setStoredSize(Long storedSize) {
+        this.storedSize = storedSize;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public String getBlobHash() {
+        return blobHash;
+    }
+
+    public void setBlobHash(String blobHash) {
+        this.blobHash = blobHash;
+    }
+
     public User getOwner() {
         return owner;
     }
@@ -65,4 +105,20 @@ public class FileEntity {
     public void setOwner(User owner) {
         this.owner = owner;
     }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public Long getCrc32c() {
+        return crc32c;
+    }
+
+    public void setCrc32c(Long crc32c) {
+        this.crc32c = crc32c;
+    }
 }
@@ -6,7 +6,7 @@ import lombok.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "tokens")
+@Table(name = "tokens", indexes = @Index(name = "ix_tokens_expires_at", columnList = "expires_at"))
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
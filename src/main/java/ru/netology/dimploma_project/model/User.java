@@ -19,6 +19,13 @@ public class User {
     @Column(nullable = false)
     private String password;
 
+    // счётчики меняются только атомарными UPDATE в UserRepository, сохранение сущности их не перезаписывает
+    @Column(name = "used_bytes", nullable = false, insertable = false, updatable = false)
+    private long usedBytes;
+
+    @Column(name = "quota_bytes", insertable = false, updatable = false)
+    private Long quotaBytes;
+
     public Long getId() {
         return id;
     }
@@ -42,4 +49,12 @@ public class User {
     public void setPassword(String password) {
         this.password = password;
     }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public Long getQuotaBytes() {
+        return quotaBytes;
+    }
 }
@@ -0,0 +1,23 @@
+package ru.netology.dimploma_project.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.netology.dimploma_project.model.Blob;
+
+public interface BlobRepository extends JpaRepository<Blob, String> {
+    // атомарно создаёт blob или увеличивает счётчик ссылок; возвращает новое значение счётчика
+    @Query(value = "INSERT INTO blobs (hash, size, storage_path, ref_count) VALUES (:hash, :size, :storagePath, 1) " +
+            "ON CONFLICT (hash) DO UPDATE SET ref_count = blobs.ref_count + 1 RETURNING ref_count",
+            nativeQuery = true)
+    long acquire(@Param("hash") String hash, @Param("size") long size, @Param("storagePath") String storagePath);
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount - 1 where b.hash = :hash")
+    int release(@Param("hash") String hash);
+
+    @Modifying
+    @Query("delete from Blob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+}
@@ -1,16 +1,55 @@
 package ru.netology.dimploma_project.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.netology.dimploma_project.dto.FileDto;
 import ru.netology.dimploma_project.model.FileEntity;
 import ru.netology.dimploma_project.model.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FileRepository extends JpaRepository<FileEntity, Long> {
     List<FileEntity> findAllByOwner(User owner);
 
+    // keyset-пагинация по имени файла: сущности не загружаются, строки сразу маппятся в FileDto
+    @Query("select new ru.netology.dimploma_project.dto.FileDto(f.filename, f.size) from FileEntity f " +
+            "where f.owner = :owner and f.filename > :after and f.filename like :prefixPattern escape '\\' " +
+            "order by f.filename")
+    List<FileDto> findPage(@Param("owner") User owner,
+                           @Param("after") String after,
+                           @Param("prefixPattern") String prefixPattern,
+                           Pageable pageable);
+
     Optional<FileEntity> findByOwnerAndFilename(User owner, String filename);
 
-    void deleteByOwnerAndFilename(User owner, String filename);
+    // пакетные операции: все файлы одним запросом с IN вместо запроса на каждое имя
+    List<FileEntity> findAllByOwnerAndFilenameIn(User owner, Collection<String> filenames);
+
+    Optional<FileEntity> findFirstByOwnerAndSha256(User owner, String sha256);
+
+    // проверка целостности: файлы с посчитанными суммами по возрастанию id, с позиции after
+    @Query("select f from FileEntity f where f.id > :after and f.sha256 is not null order by f.id")
+    List<FileEntity> findChecksummedAfter(@Param("after") long after, Pageable pageable);
+
+    // восстановление по журналу и поиск файлов без строк сверяют хранилище с таблицей по адресу объекта
+    boolean existsByStoragePath(String storagePath);
+
+    @Query("select f.storagePath from FileEntity f where f.storagePath in :paths")
+    List<String> findExistingStoragePaths(@Param("paths") Collection<String> paths);
+
+    // перенос в раскладку sharded: обычные файлы (не blob) по возрастанию id, с позиции after
+    @Query("select f from FileEntity f where f.id > :after and f.blobHash is null order by f.id")
+    List<FileEntity> findStoredAfter(@Param("after") long after, Pageable pageable);
+
+    // адрес меняется, только если строку не переименовали и не удалили параллельно
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.storagePath = :to where f.id = :id and f.storagePath = :from")
+    int relocate(@Param("id") Long id, @Param("from") String from, @Param("to") String to);
 }
@@ -1,19 +1,33 @@
 package ru.netology.dimploma_project.repository;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.netology.dimploma_project.model.Token;
-import ru.netology.dimploma_project.model.User;
 
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
 public interface TokenRepository extends JpaRepository<Token, Long>{
+    // пользователь подгружается тем же запросом, чтобы не было второго обращения к БД
+    @EntityGraph(attributePaths = "user")
     Optional<Token> findByToken(String token);
 
-    List<Token> findAllByUser(User user);
+    // для фильтра отозванных подписанных токенов: истёкшие отклоняются по сроку и в фильтре не нужны
+    @Query("select t.token from Token t where t.revoked = true and t.expiresAt > :now")
+    List<String> findRevokedTokens(@Param("now") Instant now);
 
-    void deleteAllByExpiresAtBefore(Instant time);
-
-    void deleteAllByUser(User user);
+    // удаление ограниченной пачкой, чтобы не держать долгие блокировки на таблице токенов.
+    // Отозванные строки удаляются только после истечения: по ним строится фильтр отозванных подписанных
+    // токенов, и без строки вышедший пользователь снова проходил бы проверку до конца срока токена
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM tokens WHERE id IN (" +
+            "SELECT id FROM tokens WHERE expires_at < :now LIMIT :batchSize)",
+            nativeQuery = true)
+    int deleteExpiredBatch(@Param("now") Instant now, @Param("batchSize") int batchSize);
 }
@@ -0,0 +1,11 @@
+package ru.netology.dimploma_project.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import ru.netology.dimploma_project.model.UploadSession;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    List<UploadSession> findAllByExpiresAtBefore(Instant time);
+}
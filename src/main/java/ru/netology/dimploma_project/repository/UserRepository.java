@@ -1,6 +1,11 @@
 package ru.netology.dimploma_project.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.netology.dimploma_project.dto.StorageUsageDto;
 import ru.netology.dimploma_project.model.User;
 
 import java.util.Optional;
@@ -8,5 +13,38 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
 
-    boolean existsByUsername(String username);
+    // замена пароля на хэш при входе; условие по старому значению не даёт перезаписать пароль,
+    // изменённый параллельно
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :hash where u.id = :id and u.password = :previous")
+    int updatePassword(@Param("id") Long id, @Param("previous") String previous, @Param("hash") String hash);
+
+    @Query("select new ru.netology.dimploma_project.dto.StorageUsageDto(u.usedBytes, u.quotaBytes) " +
+            "from User u where u.id = :id")
+    Optional<StorageUsageDto> findUsage(@Param("id") Long id);
+
+    // проверка квоты и увеличение счётчика одним UPDATE: параллельные загрузки не превысят квоту;
+    // 0 изменённых строк — места не хватает
+    @Transactional
+    @Modifying
+    @Query("update User u set u.usedBytes = u.usedBytes + :bytes " +
+            "where u.id = :id and u.usedBytes + :bytes <= coalesce(u.quotaBytes, :defaultQuota)")
+    int charge(@Param("id") Long id, @Param("bytes") long bytes, @Param("defaultQuota") long defaultQuota);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.usedBytes = case when u.usedBytes > :bytes then u.usedBytes - :bytes else 0 end " +
+            "where u.id = :id")
+    int release(@Param("id") Long id, @Param("bytes") long bytes);
+
+    // пересчёт счётчиков по таблице files; обновляются только разошедшиеся строки
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE users u SET used_bytes = s.total " +
+            "FROM (SELECT u2.id, COALESCE(SUM(f.size), 0) AS total " +
+            "      FROM users u2 LEFT JOIN files f ON f.owner_id = u2.id GROUP BY u2.id) s " +
+            "WHERE u.id = s.id AND u.used_bytes <> s.total",
+            nativeQuery = true)
+    int reconcileUsage();
 }
@@ -3,6 +3,7 @@ package ru.netology.dimploma_project.service;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
 import ru.netology.dimploma_project.model.Token;
 import ru.netology.dimploma_project.model.User;
 import ru.netology.dimploma_project.repository.TokenRepository;
@@ -18,6 +19,12 @@ import java.util.Optional;
 public class AuthService {
     private final TokenRepository tokenRepository;
     private final UserRepository userRepository;
+    private final TokenCache tokenCache;
+    private final OperationMetrics metrics;
+    private final TokenSigner tokenSigner;
+    private final RevokedTokens revokedTokens;
+    private final PasswordHasher passwordHasher;
+    private final UnknownUserCache unknownUsers;
 
     private static final SecureRandom secureRandom = new SecureRandom();
     private static final Base64.Encoder base64Encoder = Base64.getUrlEncoder();
@@ -25,37 +32,100 @@ public class AuthService {
     private static final Logger logger = LogManager.getLogger(AuthService.class);
 
     private static final long TOKEN_TTL_DAYS = 1;
+    // ограничение колонки tokens.token: пользователь с очень длинным именем получает непрозрачный токен
+    private static final int MAX_TOKEN_LENGTH = 255;
 
-    public AuthService(TokenRepository tokenRepository, UserRepository userRepository) {
+    public AuthService(TokenRepository tokenRepository, UserRepository userRepository, TokenCache tokenCache,
+                       OperationMetrics metrics, TokenSigner tokenSigner, RevokedTokens revokedTokens,
+                       PasswordHasher passwordHasher, UnknownUserCache unknownUsers) {
         this.tokenRepository = tokenRepository;
         this.userRepository = userRepository;
+        this.tokenCache = tokenCache;
+        this.metrics = metrics;
+        this.tokenSigner = tokenSigner;
+        this.revokedTokens = revokedTokens;
+        this.passwordHasher = passwordHasher;
+        this.unknownUsers = unknownUsers;
     }
 
     public Token login(String username, String password) {
+        OperationMetrics.Sample sample = metrics.auth(OperationMetrics.LOGIN);
+        try {
+            Token token = authenticate(username, password);
+            sample.success();
+            return token;
+        } catch (IllegalArgumentException | LoginThrottledException e) {
+            sample.denied();
+            throw e;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private Token authenticate(String username, String password) {
         logger.info("Попытка входа пользователя '{}'", username);
+        if (unknownUsers.contains(username)) {
+            logger.warn("Неудачный вход: неизвестный username '{}' (из кэша)", username);
+            throw new IllegalArgumentException("Wrong username.");
+        }
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> {
                     logger.warn("Неудачный вход: неправильный username '{}'", username);
+                    unknownUsers.add(username);
                     return new IllegalArgumentException("Wrong username.");
                 });
 
-        if (!user.getPassword().equals(password)) {
+        String stored = user.getPassword();
+        if (!passwordHasher.matches(password, stored)) {
             logger.warn("Неудачный вход: неправильный пароль пользователя '{}'", username);
             throw new IllegalArgumentException("Wrong password.");
         }
+        if (passwordHasher.needsRehash(stored)) {
+            rehash(user, password, stored);
+        }
 
-        String tokenValue = generateNewToken();
+        // срок хранится в токене с точностью до секунды, строка в tokens должна с ним совпадать
+        Instant expiresAt = Instant.now().plus(TOKEN_TTL_DAYS, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+        String tokenValue = issueToken(user, expiresAt);
         logger.info("Пользователь '{}' успешно вошёл, создан токен", username);
 
+        // строка пишется и для подписанного токена: по ней работают выход, отзыв и очистка токенов
         Token token = new Token();
         token.setToken(tokenValue);
         token.setUser(user);
-        token.setExpiresAt(Instant.now().plus(TOKEN_TTL_DAYS, ChronoUnit.DAYS));
+        token.setExpiresAt(expiresAt);
         token.setRevoked(false);
 
         return tokenRepository.save(token);
     }
 
+    // открытые пароли из старых записей и хэши с прежним числом итераций заменяются при первом успешном входе
+    private void rehash(User user, String password, String stored) {
+        String hash;
+        try {
+            hash = passwordHasher.hash(password);
+        } catch (LoginThrottledException e) {
+            // пароль уже проверен — вход не отклоняем, перехэшируем при следующем входе
+            logger.debug("Перехэширование пароля '{}' отложено: пул занят", user.getUsername());
+            return;
+        }
+        if (userRepository.updatePassword(user.getId(), stored, hash) > 0) {
+            user.setPassword(hash);
+            logger.info("Пароль пользователя '{}' перехэширован", user.getUsername());
+        }
+    }
+
+    private String issueToken(User user, Instant expiresAt) {
+        if (tokenSigner.isEnabled()) {
+            String signed = tokenSigner.sign(user.getId(), user.getUsername(), expiresAt);
+            if (signed.length() <= MAX_TOKEN_LENGTH) {
+                return signed;
+            }
+        }
+        return generateNewToken();
+    }
+
     private String normalizeToken(String token) {
         token = token.trim();
         if (token.toLowerCase().startsWith("bearer ")) {
@@ -73,23 +143,79 @@ public class AuthService {
         }
 
         String normalized = normalizeToken(tokenValue);
+        tokenCache.invalidate(normalized);
         tokenRepository.findByToken(normalized).ifPresent(t -> {
             logger.info("Установление статуса revoked для токена");
             t.setRevoked(true);
             tokenRepository.save(t);
+            if (TokenSigner.isSigned(normalized)) {
+                revokedTokens.add(normalized);
+            }
         });
     }
 
+    // проверка токена для AuthInterceptor: вызывается один раз на запрос, результат хранится в атрибуте запроса
+    public Optional<AuthPrincipal> authenticate(String tokenValue) {
+        return findUserByToken(tokenValue).map(AuthPrincipal::of);
+    }
+
     public Optional<User> findUserByToken(String tokenValue) {
         if (tokenValue == null || tokenValue.isBlank()) {
             logger.warn("Токен пустой");
             return Optional.empty();
         }
 
-        String normalized = normalizeToken(tokenValue);
-        return tokenRepository.findByToken(normalized)
-                .filter(t -> !t.isRevoked() && t.getExpiresAt().isAfter(Instant.now()))
-                .map(Token::getUser);
+        OperationMetrics.Sample sample = metrics.auth(OperationMetrics.TOKEN);
+        try {
+            Optional<User> user = lookupUser(normalizeToken(tokenValue));
+            if (user.isPresent()) {
+                sample.success();
+            } else {
+                sample.denied();
+            }
+            return user;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private Optional<User> lookupUser(String normalized) {
+        if (TokenSigner.isSigned(normalized)) {
+            return lookupSigned(normalized);
+        }
+
+        Optional<AuthPrincipal> cached = tokenCache.get(normalized);
+        if (cached.isPresent()) {
+            return cached.map(AuthPrincipal::toUser);
+        }
+
+        Optional<Token> token = tokenRepository.findByToken(normalized)
+                .filter(t -> !t.isRevoked() && t.getExpiresAt().isAfter(Instant.now()));
+        token.ifPresent(t -> tokenCache.put(normalized, AuthPrincipal.of(t.getUser()), t.getExpiresAt()));
+        return token.map(Token::getUser);
+    }
+
+    // подписанный токен проверяется без БД; к таблице tokens обращаемся, только если фильтр отзывов
+    // считает токен возможно отозванным. Пользователь собирается из утверждений токена и не привязан к сессии
+    private Optional<User> lookupSigned(String normalized) {
+        Optional<TokenSigner.Claims> claims = tokenSigner.verify(normalized)
+                .filter(c -> c.expiresAt().isAfter(Instant.now()));
+        if (claims.isEmpty()) {
+            return Optional.empty();
+        }
+        if (revokedTokens.mightBeRevoked(normalized)) {
+            boolean active = tokenRepository.findByToken(normalized)
+                    .filter(t -> !t.isRevoked())
+                    .isPresent();
+            if (!active) {
+                return Optional.empty();
+            }
+        }
+        User user = new User();
+        user.setId(claims.get().userId());
+        user.setUsername(claims.get().username());
+        return Optional.of(user);
     }
 
     public static String generateNewToken() {
@@ -0,0 +1,184 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.model.Blob;
+import ru.netology.dimploma_project.repository.BlobRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.locks.ReentrantLock;
+
+// контентно-адресуемое хранилище: одинаковое содержимое лежит в хранилище один раз
+// под ключом .blobs/ab/cd/<sha-256>, а файлы пользователей ссылаются на него со счётчиком ссылок.
+// Перенос нового объекта и удаление объекта без ссылок записываются в журнал намерений, как и операции
+// с обычными файлами: после сбоя IntentRecovery решает по строкам files, ссылающимся на адрес blob
+@Component
+public class BlobStore {
+    private final BlobRepository blobRepository;
+    private final StorageBackend storage;
+    private final IntentJournal journal;
+    private final Path tmpDir;
+    // перенос нового объекта и удаление объекта без ссылок с одним хэшем не пересекаются
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    private static final Logger logger = LogManager.getLogger(BlobStore.class);
+
+    public BlobStore(BlobRepository blobRepository,
+                     StorageBackend storage,
+                     IntentJournal journal,
+                     @Value("${app.storage.path:uploads}") String storageDir) {
+        this.blobRepository = blobRepository;
+        this.storage = storage;
+        this.journal = journal;
+        this.tmpDir = Paths.get(storageDir).resolve(".blobs").resolve("tmp");
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(tmpDir);
+        } catch (IOException e) {
+            logger.error("Ошибка создания каталога '{}'", tmpDir, e);
+            throw new RuntimeException("Не удалось создать папку для хранения blob-объектов", e);
+        }
+    }
+
+    // поток пишется во временный файл с одновременным подсчётом SHA-256, второго чтения нет;
+    // если такой blob уже есть, временный файл удаляется и увеличивается только счётчик ссылок.
+    // Временный файл нового blob живёт до конца транзакции вызывающего
+    public Blob store(InputStream data) throws IOException {
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        MessageDigest digest = sha256();
+        long size;
+        try (InputStream in = new DigestInputStream(data, digest)) {
+            size = FileStreams.copyToFile(in, tmp);
+        } catch (IOException | RuntimeException e) {
+            FileStreams.deleteQuietly(tmp);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        String key = keyFor(hash);
+        String location = storage.locate(key);
+        long refCount;
+        try {
+            refCount = blobRepository.acquire(hash, size, location);
+        } catch (RuntimeException e) {
+            FileStreams.deleteQuietly(tmp);
+            throw e;
+        }
+
+        if (refCount == 1 || !storage.exists(location)) {
+            // новый объект появляется в хранилище только после коммита строки: при откате удаляется лишь
+            // временный файл, и в .blobs не остаётся объектов без строки
+            long intent;
+            try {
+                intent = journal.begin(IntentJournal.Intent.put(null, tmp, location, key));
+            } catch (IOException e) {
+                FileStreams.deleteQuietly(tmp);
+                throw e;
+            }
+            Transactions.afterCompletion(committed -> {
+                if (!committed) {
+                    FileStreams.deleteQuietly(tmp);
+                    journal.end(intent);
+                } else if (publish(hash, key, tmp)) {
+                    journal.end(intent);
+                }
+            });
+            logger.info("Сохранён новый blob {} ({} bytes)", hash, size);
+        } else {
+            Files.deleteIfExists(tmp);
+            logger.info("Blob {} уже существует, ссылок: {}", hash, refCount);
+        }
+        return new Blob(hash, size, location, refCount);
+    }
+
+    // ещё одна ссылка на существующий blob без передачи содержимого
+    public void retain(String hash, long size, String location) {
+        long refCount = blobRepository.acquire(hash, size, location);
+        logger.info("Blob {} переиспользован, ссылок: {}", hash, refCount);
+    }
+
+    // объект удаляется после коммита: при откате строка и счётчик ссылок возвращаются вместе с содержимым
+    public void release(String hash) {
+        blobRepository.release(hash);
+        if (blobRepository.deleteIfUnreferenced(hash) == 0) {
+            return;
+        }
+        long intent;
+        try {
+            intent = journal.begin(IntentJournal.Intent.delete(null, storage.locate(keyFor(hash))));
+        } catch (IOException e) {
+            logger.error("Ошибка записи в журнал намерений при удалении blob {}", hash, e);
+            throw new IllegalArgumentException("Ошибка удаления файла на диске.", e);
+        }
+        Transactions.afterCompletion(committed -> {
+            if (!committed || unpublish(hash)) {
+                journal.end(intent);
+            }
+        });
+    }
+
+    // при ошибке временный файл и запись журнала остаются: перенос повторит восстановление при старте
+    private boolean publish(String hash, String key, Path tmp) {
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            storage.put(key, tmp);
+            return true;
+        } catch (IOException e) {
+            logger.error("Ошибка переноса blob {} в хранилище, он будет повторён при старте", hash, e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // после коммита удаления blob с тем же хэшем мог быть загружен заново: если его строка уже закоммичена,
+    // объект нужен ей. Загрузка, закоммиченная позже проверки, переносит свой файл после этого удаления —
+    // оба действия идут под одной блокировкой хэша на этом узле
+    private boolean unpublish(String hash) {
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            if (blobRepository.existsById(hash)) {
+                logger.info("Blob {} загружен заново, объект оставлен", hash);
+                return true;
+            }
+            storage.delete(storage.locate(keyFor(hash)));
+            logger.info("Blob {} удалён — ссылок не осталось", hash);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ошибка при удалении blob {}, оно будет повторено при старте", hash, e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(String hash) {
+        return locks[(hash.hashCode() & 0x7FFFFFFF) % locks.length];
+    }
+
+    static String keyFor(String hash) {
+        return ".blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.netology.dimploma_project.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+// SHA-256 и CRC32C считаются по ходу чтения потока, второго прохода по содержимому нет;
+// skip тоже читает пропускаемые байты, чтобы они попали в суммы
+final class ChecksumInputStream extends FilterInputStream {
+    private final MessageDigest sha256;
+    private final CRC32C crc32c = new CRC32C();
+
+    // withSha256 = false — только CRC32C, когда SHA-256 уже считает вызывающий код (blob-хранилище)
+    ChecksumInputStream(InputStream in, boolean withSha256) {
+        super(in);
+        this.sha256 = withSha256 ? newSha256() : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            crc32c.update(b);
+            if (sha256 != null) {
+                sha256.update((byte) b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        int n = super.read(buffer, off, len);
+        if (n > 0) {
+            crc32c.update(buffer, off, n);
+            if (sha256 != null) {
+                sha256.update(buffer, off, n);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] discard = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(discard, 0, (int) Math.min(discard.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // вызывается один раз, после того как поток прочитан до конца
+    String sha256Hex() {
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    long crc32c() {
+        return crc32c.getValue();
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
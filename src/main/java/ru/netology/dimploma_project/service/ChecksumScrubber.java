@@ -0,0 +1,160 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// фоновая проверка целостности: файлы перечитываются пачками по возрастанию id, суммы содержимого
+// сравниваются с посчитанными при загрузке. Скорость чтения ограничена max-bytes-per-second,
+// чтобы проверка не конкурировала с отдачей файлов клиентам. После последнего файла проход начинается заново
+@Component
+@ConditionalOnProperty(name = "app.storage.scrubber.enabled", havingValue = "true", matchIfMissing = true)
+public class ChecksumScrubber {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileRepository fileRepository;
+    private final StorageBackend storage;
+    private final OperationMetrics metrics;
+    private final int batchSize;
+    private final long maxBytesPerSecond;
+
+    private final AtomicLong position = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private static final Logger logger = LogManager.getLogger(ChecksumScrubber.class);
+
+    public ChecksumScrubber(FileRepository fileRepository,
+                            StorageBackend storage,
+                            OperationMetrics metrics,
+                            @Value("${app.storage.scrubber.batch-size:100}") int batchSize,
+                            @Value("${app.storage.scrubber.max-bytes-per-second:8388608}") long maxBytesPerSecond) {
+        this.fileRepository = fileRepository;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    // одна пачка за запуск; возвращает число проверенных файлов
+    @Scheduled(initialDelayString = "${app.storage.scrubber.initial-delay-ms:600000}",
+            fixedDelayString = "${app.storage.scrubber.interval-ms:60000}")
+    public int scrub() {
+        List<FileEntity> batch = fileRepository.findChecksummedAfter(position.get(), PageRequest.ofSize(batchSize));
+        if (batch.isEmpty()) {
+            if (position.getAndSet(0) > 0) {
+                logger.info("Проверка целостности: проход завершён, проверено {}, повреждено {}, отсутствует {}",
+                        verified.get(), corrupted.get(), missing.get());
+            }
+            return 0;
+        }
+        Throttle throttle = new Throttle(maxBytesPerSecond);
+        for (FileEntity fileEntity : batch) {
+            verify(fileEntity, throttle);
+            position.set(fileEntity.getId());
+        }
+        return batch.size();
+    }
+
+    private void verify(FileEntity fileEntity, Throttle throttle) {
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.SCRUB);
+        StorageCodec codec = fileEntity.getCodec() == null ? StorageCodec.NONE : StorageCodec.fromId(fileEntity.getCodec());
+        try (ChecksumInputStream in = new ChecksumInputStream(
+                codec.decompress(storage.get(fileEntity.getStoragePath())), true)) {
+            long size = throttle.copy(in, OutputStream.nullOutputStream());
+            bytesRead.addAndGet(size);
+            boolean intact = size == fileEntity.getSize()
+                    && Long.valueOf(in.crc32c()).equals(fileEntity.getCrc32c())
+                    && in.sha256Hex().equals(fileEntity.getSha256());
+            if (intact) {
+                verified.incrementAndGet();
+            } else {
+                corrupted.incrementAndGet();
+                logger.error("Файл id={} ('{}') повреждён: содержимое не совпадает с контрольными суммами",
+                        fileEntity.getId(), fileEntity.getStoragePath());
+            }
+            sample.success(size);
+        } catch (NoSuchFileException e) {
+            missing.incrementAndGet();
+            logger.error("Файл id={} отсутствует в хранилище: '{}'", fileEntity.getId(), fileEntity.getStoragePath());
+            sample.failure(e);
+        } catch (IOException | RuntimeException e) {
+            // ошибка распаковки — тоже повреждение содержимого
+            corrupted.incrementAndGet();
+            logger.error("Файл id={} ('{}') не читается", fileEntity.getId(), fileEntity.getStoragePath(), e);
+            sample.failure(e);
+        }
+    }
+
+    public long getVerified() {
+        return verified.get();
+    }
+
+    public long getCorrupted() {
+        return corrupted.get();
+    }
+
+    public long getMissing() {
+        return missing.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    // после каждого буфера поток ждёт, пока средняя скорость с начала пачки не опустится до лимита
+    private static final class Throttle {
+        private final long maxBytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long total;
+
+        private Throttle(long maxBytesPerSecond) {
+            this.maxBytesPerSecond = maxBytesPerSecond;
+        }
+
+        long copy(InputStream in, OutputStream out) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                size += n;
+                total += n;
+                pause();
+            }
+            return size;
+        }
+
+        private void pause() throws IOException {
+            if (maxBytesPerSecond <= 0) {
+                return;
+            }
+            long dueNanos = total * TimeUnit.SECONDS.toNanos(1) / maxBytesPerSecond;
+            long waitNanos = dueNanos - (System.nanoTime() - startNanos);
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Проверка целостности прервана", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.netology.dimploma_project.service;
+
+import org.springframework.core.io.Resource;
+
+// содержимое файла вместе с контрольными суммами, посчитанными при загрузке;
+// у файлов, загруженных до появления сумм, оба значения null
+public interface ChecksummedResource extends Resource {
+    String getSha256();
+
+    Long getCrc32c();
+}
@@ -0,0 +1,65 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+
+// выбор кодека для каждого файла по началу его содержимого: уже сжатые данные (архивы, изображения, видео)
+// имеют энтропию около 8 бит на байт, повторное сжатие их не уменьшит и только займёт процессор
+@Component
+public class CompressionPolicy {
+    static final int SAMPLE_SIZE = 64 * 1024;
+    // файлы меньше этого размера почти не сжимаются, а заголовок кадра съедает выигрыш
+    static final int MIN_SIZE = 512;
+    static final double MAX_ENTROPY = 7.5;
+
+    private final StorageCodec codec;
+
+    private static final Logger logger = LogManager.getLogger(CompressionPolicy.class);
+
+    public CompressionPolicy(@Value("${app.storage.compression:none}") String codec) {
+        this.codec = StorageCodec.fromId(codec);
+        logger.info("Сжатие файлов на диске: {}", this.codec.id());
+    }
+
+    // поток должен быть создан с буфером не меньше SAMPLE_SIZE: образец читается и возвращается через mark/reset
+    StorageCodec select(BufferedInputStream in) throws IOException {
+        if (codec == StorageCodec.NONE) {
+            return StorageCodec.NONE;
+        }
+        in.mark(SAMPLE_SIZE);
+        byte[] sample = in.readNBytes(SAMPLE_SIZE);
+        in.reset();
+        return select(sample, sample.length);
+    }
+
+    StorageCodec select(byte[] sample, int length) {
+        if (length < MIN_SIZE || entropy(sample, length) > MAX_ENTROPY) {
+            return StorageCodec.NONE;
+        }
+        return codec;
+    }
+
+    // энтропия Шеннона по частотам байт, бит на байт: 0 — один повторяющийся байт, 8 — случайные данные
+    static double entropy(byte[] sample, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[sample[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+}
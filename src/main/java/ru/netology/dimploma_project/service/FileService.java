@@ -1,18 +1,42 @@
 package ru.netology.dimploma_project.service;
 
+import org.springframework.core.io.Resource;
+import ru.netology.dimploma_project.dto.FileDto;
 import ru.netology.dimploma_project.model.FileEntity;
 import ru.netology.dimploma_project.model.User;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
 
 public interface FileService {
     void uploadFile(String filename, byte[] fileData, User owner);
 
+    void uploadFile(String filename, InputStream data, User owner);
+
+    // создаёт файл из уже загруженного владельцем содержимого с тем же SHA-256; false — такого содержимого нет
+    boolean copyByChecksum(String filename, String sha256, User owner);
+
     byte[] downloadFile(String filename, User owner);
 
+    Resource downloadFileAsResource(String filename, User owner);
+
     void deleteFile(String filename, User owner);
 
+    // удаляет найденные файлы одной транзакцией, возвращает имена удалённых
+    List<String> deleteFiles(Collection<String> filenames, User owner);
+
+    // все файлы должны существовать, иначе IllegalArgumentException
+    List<FileEntity> findFiles(Collection<String> filenames, User owner);
+
+    // ZIP пишется прямо в out по мере чтения файлов, без промежуточной копии на диске или в памяти
+    void writeZip(List<FileEntity> files, OutputStream out) throws IOException;
+
     void renameFile(String oldFilename, String newFilename, User owner);
 
     List<FileEntity> getAllFiles(User owner);
+
+    List<FileDto> getFilesPage(User owner, String afterFilename, String prefix, int limit);
 }
@@ -4,33 +4,82 @@ import jakarta.transaction.Transactional;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import ru.netology.dimploma_project.dto.FileDto;
+import ru.netology.dimploma_project.model.Blob;
 import ru.netology.dimploma_project.model.FileEntity;
 import ru.netology.dimploma_project.model.User;
 import ru.netology.dimploma_project.repository.FileRepository;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.*;
-import java.util.List;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import java.util.stream.Collectors;
 
 @Service
 public class FileServiceLocal implements FileService {
     private final FileRepository fileRepository;
-    private final Path storagePath;
+    private final StorageBackend storage;
+    private final BlobStore blobStore;
+    private final OperationMetrics metrics;
+    private final QuotaService quotaService;
+    private final CompressionPolicy compression;
+    private final ReadCache readCache;
+    private final IntentJournal journal;
+    private final StorageLayout layout;
+    private final Path stagingDir;
+    private final boolean dedup;
+    private final long mmapThreshold;
+
+    // storage_path строки, адрес которой ещё не назначен: NOT NULL, но не совпадает ни с одним файлом
+    private static final String PENDING_LOCATION = "";
 
     private static final Logger logger = LogManager.getLogger(FileServiceLocal.class);
 
     public FileServiceLocal(FileRepository fileRepository,
-                            @Value("${app.storage.path:uploads}") String storageDir) {
+                            StorageBackend storage,
+                            BlobStore blobStore,
+                            OperationMetrics metrics,
+                            QuotaService quotaService,
+                            CompressionPolicy compression,
+                            ReadCache readCache,
+                            IntentJournal journal,
+                            StorageLayout layout,
+                            @Value("${app.storage.path:uploads}") String storageDir,
+                            @Value("${app.storage.dedup:false}") boolean dedup,
+                            @Value("${app.storage.mmap-threshold:0}") long mmapThreshold) {
         this.fileRepository = fileRepository;
-        this.storagePath = Paths.get(storageDir);
+        this.storage = storage;
+        this.blobStore = blobStore;
+        this.metrics = metrics;
+        this.quotaService = quotaService;
+        this.compression = compression;
+        this.readCache = readCache;
+        this.journal = journal;
+        this.layout = layout;
+        // загрузка сначала пишется на локальный диск, в хранилище попадает только после вставки строки в БД
+        this.stagingDir = Paths.get(storageDir).resolve(".staging");
+        this.dedup = dedup;
+        this.mmapThreshold = mmapThreshold;
         try {
-            Files.createDirectories(storagePath);
-            logger.info("Каталог хранилища '{}' инициализирован", storagePath);
+            Files.createDirectories(stagingDir);
+            logger.info("Каталог загрузок '{}' инициализирован", stagingDir);
         } catch (IOException e) {
-            logger.error("Ошибка создания каталога '{}'", storagePath, e);
+            logger.error("Ошибка создания каталога '{}'", stagingDir, e);
             throw new RuntimeException("Не удалось создать папку для хранения файлов", e);
         }
     }
@@ -38,14 +87,79 @@ public class FileServiceLocal implements FileService {
     @Transactional
     @Override
     public void uploadFile(String filename, byte[] fileData, User owner) {
+        uploadFile(filename, new ByteArrayInputStream(fileData), owner);
+    }
+
+    @Transactional
+    @Override
+    public void uploadFile(String filename, InputStream data, User owner) {
         logger.info("Загрузка файла '{}' пользователем '{}'", filename, owner.getUsername());
 
-        Path userDir = storagePath.resolve(owner.getUsername());
-        Path filePath = userDir.resolve(filename);
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.UPLOAD);
+        try {
+            // поток обрывается, как только превышен остаток квоты, — лишнее на диск не пишется
+            InputStream limited = FileStreams.limit(data, quotaService.remaining(owner), QuotaService.QUOTA_EXCEEDED);
+            long size = dedup ? uploadDeduplicated(filename, limited, owner) : uploadPlain(filename, limited, owner);
+            metrics.received(OperationMetrics.UPLOAD, size);
+            sample.success(size);
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
 
+    private long uploadPlain(String filename, InputStream data, User owner) {
+        // файл пишется во временный и переносится в хранилище только после вставки строки в БД,
+        // поэтому дубликат, отклонённый уникальным индексом, не перезаписывает существующий файл
+        Path tmpPath = null;
         try {
-            Files.createDirectories(userDir);
-            Files.write(filePath, fileData, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            long size;
+            StorageCodec codec;
+            // суммы считаются под буфером выборки: mark/reset при выборе кодека не учитывает байты дважды
+            ChecksumInputStream checked = new ChecksumInputStream(data, true);
+            try (BufferedInputStream in = new BufferedInputStream(checked, CompressionPolicy.SAMPLE_SIZE)) {
+                codec = compression.select(in);
+                tmpPath = Files.createTempFile(stagingDir, "upload-", ".part");
+                size = FileStreams.copyToFile(in, tmpPath, codec);
+            }
+            long storedSize = Files.size(tmpPath);
+
+            FileEntity fileEntity = new FileEntity();
+            fileEntity.setFilename(filename);
+            fileEntity.setSize(size);
+            fileEntity.setStoredSize(storedSize);
+            fileEntity.setCodec(codec.id());
+            fileEntity.setSha256(checked.sha256Hex());
+            fileEntity.setCrc32c(checked.crc32c());
+            fileEntity.setOwner(owner);
+            String key = assignLocation(fileEntity, owner, filename);
+            // окончательная проверка квоты — атомарно с увеличением счётчика, до переноса файла в хранилище
+            quotaService.charge(owner, size);
+
+            // намерение на диске до переноса: после сбоя до коммита перенесённый файл будет удалён при старте
+            String location = fileEntity.getStoragePath();
+            long intent = journal.begin(IntentJournal.Intent.put(fileEntity.getId(), tmpPath, location, key));
+            completeAfterTransaction(intent, null, () -> storage.delete(location));
+            storage.put(key, tmpPath);
+            logger.info("Файл '{}' успешно загружен ({} bytes, на диске {} bytes, {})",
+                    filename, size, storedSize, codec.id());
+            return size;
+        } catch (IOException e) {
+            logger.error("Ошибка при загрузке файла '{}'", filename, e);
+            throw new IllegalArgumentException("Ошибка при загрузке файла.", e);
+        } finally {
+            if (tmpPath != null) {
+                FileStreams.deleteQuietly(tmpPath);
+            }
+        }
+    }
+
+    private long uploadDeduplicated(String filename, InputStream data, User owner) {
+        Blob blob;
+        // SHA-256 содержимого — это хэш blob, здесь досчитывается только CRC32C
+        ChecksumInputStream checked = new ChecksumInputStream(data, false);
+        try (InputStream in = checked) {
+            blob = blobStore.store(in);
         } catch (IOException e) {
             logger.error("Ошибка при загрузке файла '{}'", filename, e);
             throw new IllegalArgumentException("Ошибка при загрузке файла.", e);
@@ -53,27 +167,37 @@ public class FileServiceLocal implements FileService {
 
         FileEntity fileEntity = new FileEntity();
         fileEntity.setFilename(filename);
-        fileEntity.setSize((long) fileData.length);
-        fileEntity.setStoragePath(filePath.toString());
+        fileEntity.setSize(blob.getSize());
+        // blob-объекты хранятся без сжатия: их делят файлы разных пользователей по хэшу содержимого
+        fileEntity.setStoredSize(blob.getSize());
+        fileEntity.setStoragePath(blob.getStoragePath());
+        fileEntity.setBlobHash(blob.getHash());
+        fileEntity.setSha256(blob.getHash());
+        fileEntity.setCrc32c(checked.crc32c());
         fileEntity.setOwner(owner);
-        try {
-            fileRepository.save(fileEntity);
-            logger.info("Файл '{}' успешно загружен", filename);
-        } catch (Exception dbEx) {
-            try {
-                Files.deleteIfExists(filePath);
-                logger.warn("Откат: удален файл '{}'", filename);
-            } catch (IOException rollbackEx) {
-                logger.error("Невозможно откатить сохранение файла '{}'", filename, rollbackEx);
-            }
-            throw dbEx;
-        }
-
+        // при ошибке сохранения транзакция откатывает и увеличение счётчика ссылок blob
+        saveUnique(fileEntity, "File already exists");
+        quotaService.charge(owner, blob.getSize());
+        logger.info("Файл '{}' успешно загружен (blob {}, {} bytes)", filename, blob.getHash(), blob.getSize());
+        return blob.getSize();
     }
 
     @Override
     public byte[] downloadFile(String filename, User owner) {
-        logger.info("Скачивание файла '{}' пользователем '{}'", filename, owner.getUsername());
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.DOWNLOAD);
+        try {
+            byte[] data = readFile(filename, owner);
+            metrics.sent(OperationMetrics.DOWNLOAD, data.length);
+            sample.success(data.length);
+            return data;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private byte[] readFile(String filename, User owner) {
+        logger.debug("Скачивание файла '{}' пользователем '{}'", filename, owner.getUsername());
 
         FileEntity fileEntity = fileRepository.findByOwnerAndFilename(owner, filename)
                 .orElseThrow(() -> {
@@ -82,18 +206,326 @@ public class FileServiceLocal implements FileService {
                     return new IllegalArgumentException("Файл не найден.");
                 });
 
+        Optional<ReadCache.Key> cacheKey = cacheKeyOf(fileEntity);
         try {
-            Path filePath = Paths.get(fileEntity.getStoragePath());
-            return Files.readAllBytes(filePath);
+            if (cacheKey.isPresent()) {
+                ReadCache.Entry entry = readCache.get(cacheKey.get()).orElse(null);
+                if (entry == null) {
+                    entry = loadCached(cacheKey.get(), fileEntity, storage.stat(fileEntity.getStoragePath()));
+                }
+                byte[] data = new byte[entry.size()];
+                entry.data().duplicate().get(data);
+                return data;
+            }
+            try (InputStream in = openStored(fileEntity)) {
+                return in.readAllBytes();
+            }
         } catch (IOException e) {
             logger.error("Ошибка чтения файла '{}'", filename, e);
             throw new IllegalArgumentException("Ошибка при чтении файла.");
         }
     }
 
+    // таймер учитывает только поиск и открытие файла: сама передача идёт после выхода из метода
+    // и видна в http.server.requests
+    @Override
+    public Resource downloadFileAsResource(String filename, User owner) {
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.DOWNLOAD);
+        try {
+            Resource resource = openFile(filename, owner);
+            sample.success(resource.contentLength());
+            return resource;
+        } catch (IOException e) {
+            sample.failure(e);
+            throw new IllegalArgumentException("Ошибка при чтении файла.", e);
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private Resource openFile(String filename, User owner) throws IOException {
+        logger.debug("Потоковое скачивание файла '{}' пользователем '{}'", filename, owner.getUsername());
+
+        FileEntity fileEntity = fileRepository.findByOwnerAndFilename(owner, filename)
+                .orElseThrow(() -> {
+                    logger.warn("Файл '{}' не найден у пользователя '{}', скачивание невозможно",
+                            filename, owner.getUsername());
+                    return new IllegalArgumentException("Файл не найден.");
+                });
+
+        // попадание в кэш не обращается к хранилищу совсем, даже за метаданными объекта
+        Optional<ReadCache.Key> cacheKey = cacheKeyOf(fileEntity);
+        if (cacheKey.isPresent()) {
+            Optional<ReadCache.Entry> cached = readCache.get(cacheKey.get());
+            if (cached.isPresent()) {
+                return new CachedFileResource(fileEntity, cached.get());
+            }
+        }
+
+        StorageBackend.ObjectInfo info;
+        try {
+            info = storage.stat(fileEntity.getStoragePath());
+        } catch (NoSuchFileException e) {
+            logger.error("Файл '{}' отсутствует в хранилище: '{}'", filename, fileEntity.getStoragePath());
+            throw new IllegalArgumentException("Ошибка при чтении файла.");
+        }
+        if (cacheKey.isPresent()) {
+            return new CachedFileResource(fileEntity, loadCached(cacheKey.get(), fileEntity, info));
+        }
+        return new StoredFileResource(fileEntity, info);
+    }
+
+    // файл, подходящий кэшу по размеру, при промахе читается целиком в direct-буфер и отдаётся уже из него
+    private ReadCache.Entry loadCached(ReadCache.Key key, FileEntity fileEntity, StorageBackend.ObjectInfo info)
+            throws IOException {
+        ByteBuffer content = ByteBuffer.allocateDirect(Math.toIntExact(fileEntity.getSize()));
+        try (ReadableByteChannel in = Channels.newChannel(openStored(fileEntity))) {
+            while (content.hasRemaining()) {
+                if (in.read(content) < 0) {
+                    break;
+                }
+            }
+        }
+        return readCache.put(key, content.flip(), info.lastModified());
+    }
+
+    private Optional<ReadCache.Key> cacheKeyOf(FileEntity fileEntity) {
+        if (fileEntity.getId() == null || fileEntity.getSize() == null || !readCache.accepts(fileEntity.getSize())) {
+            return Optional.empty();
+        }
+        return Optional.of(new ReadCache.Key(fileEntity.getId(), fileEntity.getStoragePath()));
+    }
+
+    private void invalidateCached(FileEntity fileEntity) {
+        if (fileEntity.getId() != null) {
+            long id = fileEntity.getId();
+            Transactions.afterCommit(() -> readCache.invalidate(id));
+        }
+    }
+
+    private InputStream openStored(FileEntity fileEntity) throws IOException {
+        InputStream in = storage.get(fileEntity.getStoragePath());
+        try {
+            return codecOf(fileEntity).decompress(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static StorageCodec codecOf(FileEntity fileEntity) {
+        return fileEntity.getCodec() == null ? StorageCodec.NONE : StorageCodec.fromId(fileEntity.getCodec());
+    }
+
+    // вставляет строку и назначает ей адрес в хранилище. Ключ раскладки sharded строится из id, который
+    // назначает БД при вставке: до этого storage_path пуст, итоговый адрес уходит в БД UPDATE-ом при коммите
+    private String assignLocation(FileEntity fileEntity, User owner, String filename) {
+        if (layout.isSharded()) {
+            fileEntity.setStoragePath(PENDING_LOCATION);
+            saveUnique(fileEntity, "File already exists");
+            String key = layout.keyFor(owner, filename, fileEntity.getId());
+            fileEntity.setStoragePath(storage.locate(key));
+            return key;
+        }
+        String key = layout.keyFor(owner, filename, null);
+        fileEntity.setStoragePath(storage.locate(key));
+        saveUnique(fileEntity, "File already exists");
+        return key;
+    }
+
+    // содержимое читается из хранилища только при отдаче ответа; длина сжатого файла — логический размер из БД.
+    // Range-запрос к несжатому файлу читает объект с нужного смещения, сжатый — распаковывается
+    // с начала и пропускает байты до начала диапазона. Несжатый локальный файл от app.storage.mmap-threshold
+    // байт читается через отображение в память
+    private final class StoredFileResource extends AbstractResource implements ChecksummedResource {
+        private final FileEntity fileEntity;
+        private final StorageBackend.ObjectInfo info;
+        private final boolean compressed;
+        private final Optional<Path> mapped;
+
+        private StoredFileResource(FileEntity fileEntity, StorageBackend.ObjectInfo info) {
+            this.fileEntity = fileEntity;
+            this.info = info;
+            this.compressed = codecOf(fileEntity) != StorageCodec.NONE;
+            this.mapped = !compressed && mmapThreshold > 0 && info.size() >= mmapThreshold
+                    ? storage.localPath(fileEntity.getStoragePath())
+                    : Optional.empty();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            InputStream in;
+            if (compressed) {
+                in = openStored(fileEntity);
+            } else if (mapped.isPresent()) {
+                in = new MappedFileInputStream(mapped.get());
+            } else {
+                in = new StoredObjectInputStream(storage, fileEntity.getStoragePath());
+            }
+            return metrics.countingSent(OperationMetrics.DOWNLOAD, in);
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return compressed ? fileEntity.getSize() : info.size();
+        }
+
+        @Override
+        public long lastModified() {
+            return info.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return fileEntity.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return (mapped.isPresent() ? "mapped file [" : "stored file [")
+                    + fileEntity.getStoragePath() + ", " + fileEntity.getCodec() + "]";
+        }
+
+        @Override
+        public String getSha256() {
+            return fileEntity.getSha256();
+        }
+
+        @Override
+        public Long getCrc32c() {
+            return fileEntity.getCrc32c();
+        }
+    }
+
+    // содержимое из кэша чтения: уже распаковано, Range-запрос переставляет позицию в буфере
+    private final class CachedFileResource extends AbstractResource implements ChecksummedResource {
+        private final FileEntity fileEntity;
+        private final ReadCache.Entry entry;
+
+        private CachedFileResource(FileEntity fileEntity, ReadCache.Entry entry) {
+            this.fileEntity = fileEntity;
+            this.entry = entry;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return metrics.countingSent(OperationMetrics.DOWNLOAD, FileStreams.of(entry.data()));
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return entry.size();
+        }
+
+        @Override
+        public long lastModified() {
+            return entry.lastModified();
+        }
+
+        @Override
+        public String getFilename() {
+            return fileEntity.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return "cached file [" + fileEntity.getStoragePath() + "]";
+        }
+
+        @Override
+        public String getSha256() {
+            return fileEntity.getSha256();
+        }
+
+        @Override
+        public Long getCrc32c() {
+            return fileEntity.getCrc32c();
+        }
+    }
+
+    // новый файл из содержимого, которое у владельца уже есть: клиент сообщает SHA-256 и не передаёт байты.
+    // Ищутся только файлы того же владельца — ответ не раскрывает, что хранят другие пользователи
+    @Transactional
+    @Override
+    public boolean copyByChecksum(String filename, String sha256, User owner) {
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.COPY);
+        try {
+            Optional<FileEntity> source = fileRepository.findFirstByOwnerAndSha256(owner, sha256.toLowerCase(Locale.ROOT));
+            if (source.isEmpty()) {
+                sample.success();
+                return false;
+            }
+            long size = copyContent(source.get(), filename, owner);
+            sample.success(size);
+            return true;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private long copyContent(FileEntity source, String filename, User owner) {
+        logger.info("Файл '{}' пользователя '{}' создаётся из имеющегося содержимого '{}'",
+                filename, owner.getUsername(), source.getFilename());
+
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setFilename(filename);
+        fileEntity.setSize(source.getSize());
+        fileEntity.setStoredSize(source.getStoredSize());
+        fileEntity.setCodec(source.getCodec());
+        fileEntity.setSha256(source.getSha256());
+        fileEntity.setCrc32c(source.getCrc32c());
+        fileEntity.setBlobHash(source.getBlobHash());
+        fileEntity.setOwner(owner);
+
+        if (source.getBlobHash() != null) {
+            fileEntity.setStoragePath(source.getStoragePath());
+            blobStore.retain(source.getBlobHash(), source.getSize(), source.getStoragePath());
+            saveUnique(fileEntity, "File already exists");
+            quotaService.charge(owner, source.getSize());
+            return source.getSize();
+        }
+
+        // копия в хранилище делается после вставки строки, как и при обычной загрузке
+        String key = assignLocation(fileEntity, owner, filename);
+        String location = fileEntity.getStoragePath();
+        quotaService.charge(owner, source.getSize());
+        try {
+            long intent = journal.begin(IntentJournal.Intent.copy(fileEntity.getId(), source.getStoragePath(), location, key));
+            completeAfterTransaction(intent, null, () -> storage.delete(location));
+            storage.copy(source.getStoragePath(), key);
+        } catch (IOException e) {
+            logger.error("Ошибка копирования '{}' → '{}'", source.getFilename(), filename, e);
+            throw new IllegalArgumentException("Ошибка при загрузке файла.", e);
+        }
+        return source.getSize();
+    }
+
     @Transactional
     @Override
     public void deleteFile(String filename, User owner) {
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.DELETE);
+        try {
+            removeFile(filename, owner);
+            sample.success();
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private void removeFile(String filename, User owner) {
         logger.info("Удаление файла '{}' пользователем '{}'", filename, owner.getUsername());
 
         FileEntity fileEntity = fileRepository.findByOwnerAndFilename(owner, filename)
@@ -104,22 +536,124 @@ public class FileServiceLocal implements FileService {
                 });
 
         fileRepository.delete(fileEntity);
+        quotaService.release(owner, fileEntity.getSize());
+        invalidateCached(fileEntity);
 
-        try {
-            Files.deleteIfExists(Paths.get(fileEntity.getStoragePath()));
+        if (fileEntity.getBlobHash() != null) {
+            blobStore.release(fileEntity.getBlobHash());
             logger.info("Файл '{}' успешно удалён", filename);
-        } catch (IOException fsEx) {
-            logger.error("Ошибка при удалении файла '{}'", filename, fsEx);
+            return;
+        }
 
-            logger.warn("Откат удаления: восстанавливаю запись файла '{}' в БД", filename);
-            fileRepository.save(fileEntity);
-            throw new IllegalArgumentException("Ошибка удаления файла на диске.", fsEx);
+        // файл удаляется после коммита: при откате остаются и строка, и файл, а сбой между коммитом
+        // и удалением доделает восстановление по журналу
+        String location = fileEntity.getStoragePath();
+        try {
+            long intent = journal.begin(IntentJournal.Intent.delete(fileEntity.getId(), location));
+            completeAfterTransaction(intent, () -> deleteUnreferenced(intent, location), null);
+        } catch (IOException e) {
+            logger.error("Ошибка записи в журнал намерений при удалении файла '{}'", filename, e);
+            throw new IllegalArgumentException("Ошибка удаления файла на диске.", e);
+        }
+        logger.info("Файл '{}' успешно удалён", filename);
+    }
+
+    // один SELECT ... IN и один DELETE ... IN на всю пачку; файлы с диска удаляются после коммита,
+    // чтобы откат транзакции не оставил записи без файлов
+    @Transactional
+    @Override
+    public List<String> deleteFiles(Collection<String> filenames, User owner) {
+        logger.info("Пакетное удаление {} файлов пользователем '{}'", filenames.size(), owner.getUsername());
+
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.BATCH_DELETE);
+        try {
+            List<FileEntity> found = fileRepository.findAllByOwnerAndFilenameIn(owner, filenames);
+            if (found.isEmpty()) {
+                sample.success();
+                return List.of();
+            }
+
+            fileRepository.deleteAllByIdInBatch(found.stream().map(FileEntity::getId).toList());
+            long totalSize = found.stream().mapToLong(FileEntity::getSize).sum();
+            quotaService.release(owner, totalSize);
+
+            List<IntentJournal.Intent> deletions = new ArrayList<>();
+            for (FileEntity fileEntity : found) {
+                invalidateCached(fileEntity);
+                if (fileEntity.getBlobHash() != null) {
+                    blobStore.release(fileEntity.getBlobHash());
+                } else {
+                    deletions.add(IntentJournal.Intent.delete(fileEntity.getId(), fileEntity.getStoragePath()));
+                }
+            }
+            // вся пачка попадает в журнал одной записью на диск
+            long[] intents = beginAll(deletions);
+            for (int i = 0; i < intents.length; i++) {
+                String location = deletions.get(i).to();
+                long intent = intents[i];
+                completeAfterTransaction(intent, () -> deleteUnreferenced(intent, location), null);
+            }
+
+            logger.info("Удалено {} файлов ({} bytes) пользователя '{}'", found.size(), totalSize, owner.getUsername());
+            sample.success(totalSize);
+            return found.stream().map(FileEntity::getFilename).toList();
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<FileEntity> findFiles(Collection<String> filenames, User owner) {
+        List<FileEntity> found = fileRepository.findAllByOwnerAndFilenameIn(owner, filenames);
+        if (found.size() != filenames.size()) {
+            Set<String> missing = new LinkedHashSet<>(filenames);
+            found.forEach(f -> missing.remove(f.getFilename()));
+            logger.warn("Файлы {} не найдены у пользователя '{}'", missing, owner.getUsername());
+            throw new IllegalArgumentException("Files not found: " + String.join(", ", missing));
+        }
+        return found;
+    }
+
+    @Override
+    public void writeZip(List<FileEntity> files, OutputStream out) throws IOException {
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.ZIP);
+        long total = 0;
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            // скорость важнее степени сжатия: архив отдаётся по мере чтения файлов
+            zip.setLevel(Deflater.BEST_SPEED);
+            for (FileEntity fileEntity : files) {
+                ZipEntry entry = new ZipEntry(fileEntity.getFilename());
+                zip.putNextEntry(entry);
+                try (InputStream in = openStored(fileEntity)) {
+                    total += in.transferTo(zip);
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+            metrics.sent(OperationMetrics.ZIP, total);
+            sample.success(total);
+        } catch (IOException | RuntimeException e) {
+            sample.failure(e);
+            throw e;
         }
     }
 
     @Transactional
     @Override
     public void renameFile(String oldFilename, String newFilename, User owner) {
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.RENAME);
+        try {
+            moveFile(oldFilename, newFilename, owner);
+            sample.success();
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private void moveFile(String oldFilename, String newFilename, User owner) {
         logger.info("Переименование файла '{}' → '{}' для пользователя '{}'",
                 oldFilename, newFilename, owner.getUsername());
 
@@ -129,41 +663,126 @@ public class FileServiceLocal implements FileService {
                     return new IllegalArgumentException("Файл не найден");
                 });
 
-        if (fileRepository.findByOwnerAndFilename(owner, newFilename).isPresent()) {
-            logger.warn("Файл '{}' уже существует у пользователя '{}'", newFilename, owner.getUsername());
-            throw new IllegalArgumentException("Файл с таким именем уже существует: " + newFilename);
+        String duplicateMessage = "Файл с таким именем уже существует: " + newFilename;
+        invalidateCached(fileEntity);
+
+        // содержимое blob и файла в раскладке sharded не зависит от имени файла — достаточно обновить метаданные
+        if (fileEntity.getBlobHash() != null || StorageLayout.isSharded(fileEntity, storage)) {
+            fileEntity.setFilename(newFilename);
+            saveUnique(fileEntity, duplicateMessage);
+            logger.info("Файл '{}' успешно переименован в '{}'", oldFilename, newFilename);
+            return;
         }
 
-        Path oldPath = Paths.get(fileEntity.getStoragePath());
-        Path newPath = oldPath.resolveSibling(newFilename);
+        String oldLocation = fileEntity.getStoragePath();
+        // файл в раскладке flat; при раскладке sharded переименование заодно переносит его на адрес по id
+        String oldKey = StorageLayout.flatKey(owner, oldFilename);
+        String newKey = layout.keyFor(owner, newFilename, fileEntity.getId());
+        String newLocation = storage.locate(newKey);
+
+        // сначала метаданные: уникальный индекс отклонит занятое имя до того, как файл будет перемещён;
+        // если перемещение не удастся или транзакция откатится, файл возвращается на прежнее место
+        fileEntity.setFilename(newFilename);
+        fileEntity.setStoragePath(newLocation);
+        saveUnique(fileEntity, duplicateMessage);
 
         try {
-            Files.move(oldPath, newPath, StandardCopyOption.REPLACE_EXISTING);
+            long intent = journal.begin(IntentJournal.Intent.move(fileEntity.getId(), oldLocation, oldKey, newLocation, newKey));
+            completeAfterTransaction(intent, null, () -> {
+                if (storage.exists(newLocation) && !storage.exists(oldLocation)) {
+                    storage.move(newLocation, oldKey);
+                }
+            });
+            storage.move(oldLocation, newKey);
             logger.info("Файл '{}' успешно переименован в '{}'", oldFilename, newFilename);
         } catch (IOException fsEx) {
             logger.error("Ошибка при переименовании файла '{}' → '{}'", oldFilename, newFilename, fsEx);
             throw new IllegalArgumentException("Ошибка при переименовании файла.");
         }
+    }
 
-        fileEntity.setFilename(newFilename);
-        fileEntity.setStoragePath(newPath.toString());
-
+    private long[] beginAll(List<IntentJournal.Intent> intents) {
+        if (intents.isEmpty()) {
+            return new long[0];
+        }
         try {
-            fileRepository.save(fileEntity);
-        } catch (Exception dbEx) {
+            return journal.begin(intents);
+        } catch (IOException e) {
+            logger.error("Ошибка записи в журнал намерений", e);
+            throw new IllegalArgumentException("Ошибка удаления файла на диске.", e);
+        }
+    }
+
+    // по исходу транзакции: коммит доделывает отложенное действие, откат возвращает хранилище к прежнему
+    // состоянию. Если действие не удалось, запись остаётся в журнале и разбирается при следующем старте
+    private void completeAfterTransaction(long intent, StorageAction onCommit, StorageAction onRollback) {
+        Transactions.afterCompletion(committed -> {
+            StorageAction action = committed ? onCommit : onRollback;
             try {
-                Files.move(newPath, oldPath, StandardCopyOption.REPLACE_EXISTING);
-                logger.warn("Откат: файл '{}' возвращён в '{}'", newFilename, oldFilename);
-            } catch (IOException rollbackEx) {
-                logger.error("Невозможно откатить файловую операцию", rollbackEx);
+                if (action != null) {
+                    action.run();
+                }
+                journal.end(intent);
+            } catch (IOException e) {
+                logger.error("Действие с хранилищем по операции {} не выполнено, оно будет повторено при старте",
+                        intent, e);
             }
-            throw dbEx;
+        });
+    }
+
+    // в раскладке flat адрес определяется именем: пока удаление ждало коммита, файл с тем же именем
+    // мог быть загружен заново. Объект нужен ему, если его строка уже закоммичена или загрузка ещё идёт —
+    // откатившаяся загрузка удалит объект сама
+    private void deleteUnreferenced(long intent, String location) throws IOException {
+        if (fileRepository.existsByStoragePath(location) || journal.isPendingTarget(location, intent)) {
+            logger.info("Объект '{}' занят загруженным заново файлом, оставлен", location);
+            return;
+        }
+        storage.delete(location);
+    }
+
+    @FunctionalInterface
+    private interface StorageAction {
+        void run() throws IOException;
+    }
+
+    // дубликат определяет уникальный индекс (owner_id, filename), а не предварительная проверка
+    private void saveUnique(FileEntity fileEntity, String duplicateMessage) {
+        try {
+            fileRepository.save(fileEntity);
+            fileRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            // транзакция уже прервана БД, поэтому ленивые связи сущности здесь не трогаем
+            logger.warn("Файл '{}' уже существует у пользователя", fileEntity.getFilename());
+            throw new IllegalArgumentException(duplicateMessage, e);
         }
     }
 
     @Override
     public List<FileEntity> getAllFiles(User owner) {
-        logger.info("Получение списка файлов пользователя '{}'", owner.getUsername());
+        logger.debug("Получение списка файлов пользователя '{}'", owner.getUsername());
         return fileRepository.findAllByOwner(owner);
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<FileDto> getFilesPage(User owner, String afterFilename, String prefix, int limit) {
+        logger.debug("Получение страницы файлов пользователя '{}' (после '{}', префикс '{}', лимит {})",
+                owner.getUsername(), afterFilename, prefix, limit);
+        String after = afterFilename == null ? "" : afterFilename;
+        String prefixPattern = prefix == null ? "%" : escapeLike(prefix) + "%";
+
+        OperationMetrics.Sample sample = metrics.file(OperationMetrics.LIST);
+        try {
+            List<FileDto> page = fileRepository.findPage(owner, after, prefixPattern, PageRequest.ofSize(limit));
+            sample.success();
+            return page;
+        } catch (RuntimeException e) {
+            sample.failure(e);
+            throw e;
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,175 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// общие операции записи потоков на диск для хранилищ файлов
+final class FileStreams {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = LogManager.getLogger(FileStreams.class);
+
+    private FileStreams() {
+    }
+
+    // копирование потока на диск через буфер фиксированного размера, размер считается по ходу записи
+    static long copyToFile(InputStream in, Path target) throws IOException {
+        return copyToFile(in, target, Long.MAX_VALUE);
+    }
+
+    // то же с ограничением размера: запись прекращается, как только поток превысил maxBytes
+    static long copyToFile(InputStream in, Path target, long maxBytes) throws IOException {
+        return copyToFile(in, target, maxBytes, StorageCodec.NONE);
+    }
+
+    // запись со сжатием на лету; возвращается логический размер, размер на диске — Files.size(target)
+    static long copyToFile(InputStream in, Path target, StorageCodec codec) throws IOException {
+        return copyToFile(in, target, Long.MAX_VALUE, codec);
+    }
+
+    private static long copyToFile(InputStream in, Path target, long maxBytes, StorageCodec codec) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (OutputStream out = codec.compress(Files.newOutputStream(target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > maxBytes) {
+                    throw new IllegalArgumentException("Превышен допустимый размер: " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return size;
+    }
+
+    // поток, который прекращает чтение с IllegalArgumentException(message), как только прочитано больше maxBytes;
+    // так ограничение срабатывает до записи лишних байт, какой бы код ни читал поток
+    static InputStream limit(InputStream in, long maxBytes, String message) {
+        if (maxBytes == Long.MAX_VALUE) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    advance(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                int n = super.read(buffer, off, len);
+                if (n > 0) {
+                    advance(n);
+                }
+                return n;
+            }
+
+            private void advance(long n) {
+                count += n;
+                if (count > maxBytes) {
+                    throw new IllegalArgumentException(message);
+                }
+            }
+        };
+    }
+
+    // первые length байт потока: дальше поток считается закончившимся, закрывается исходный поток
+    static InputStream bounded(InputStream in, long length) {
+        return new FilterInputStream(in) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = super.read(buffer, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), remaining);
+            }
+        };
+    }
+
+    // чтение из буфера без копирования в кучу; skip переставляет позицию, поэтому Range-запрос не читает лишнего
+    static InputStream of(ByteBuffer buffer) {
+        ByteBuffer data = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return data.hasRemaining() ? data.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!data.hasRemaining()) {
+                    return len == 0 ? 0 : -1;
+                }
+                int n = Math.min(len, data.remaining());
+                data.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.max(0, Math.min(n, data.remaining()));
+                data.position(data.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return data.remaining();
+            }
+        };
+    }
+
+    static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.error("Невозможно удалить файл '{}'", path, e);
+        }
+    }
+}
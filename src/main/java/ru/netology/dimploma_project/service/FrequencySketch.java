@@ -0,0 +1,70 @@
+package ru.netology.dimploma_project.service;
+
+// приблизительные частоты обращений для допуска в кэш (TinyLFU): Count-Min sketch из 4-битных счётчиков,
+// по 16 в каждом long. Когда число учтённых обращений достигает sampleSize, все счётчики делятся пополам,
+// поэтому давняя популярность постепенно забывается
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    int frequency(long hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int shift = offsetOf(hash, i) << 2;
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(long hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int shift = offsetOf(hash, i) << 2;
+            if (((table[index] >>> shift) & 0xF) != 0xF) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(long hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return (int) (h ^ (h >>> 32)) & tableMask;
+    }
+
+    private static int offsetOf(long hash, int i) {
+        return (int) (hash >>> (i << 4)) & 0xF;
+    }
+
+    static long spread(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
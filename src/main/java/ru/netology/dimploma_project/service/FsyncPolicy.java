@@ -0,0 +1,35 @@
+package ru.netology.dimploma_project.service;
+
+// когда файл в локальном хранилище сбрасывается на диск; от политики зависит, что переживёт отключение питания
+// после коммита строки в files, и сколько стоит каждая загрузка
+public enum FsyncPolicy {
+    // данные остаются в page cache, на диск их сбросит ОС (обычно в течение 30 секунд)
+    NONE("none"),
+    // содержимое файла сбрасывается до переименования: после сбоя под итоговым именем не окажется пустого
+    // или обрезанного файла, но само переименование может потеряться
+    FILE("file"),
+    // дополнительно сбрасывается каталог, поэтому переименование тоже переживает сбой
+    DIRECTORY("directory"),
+    // файлы и каталоги сбрасываются фоновым потоком раз в интервал: загрузка не ждёт диска,
+    // при сбое теряется не больше одного интервала
+    BATCHED("batched");
+
+    private final String id;
+
+    FsyncPolicy(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public static FsyncPolicy fromId(String id) {
+        for (FsyncPolicy policy : values()) {
+            if (policy.id.equalsIgnoreCase(id)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная политика fsync: " + id);
+    }
+}
@@ -0,0 +1,391 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// журнал намерений: перед необратимым действием с хранилищем (перенос загрузки, копия, перемещение,
+// удаление файла или blob-объекта) в локальный файл дописывается запись о нём и сбрасывается на диск, после завершения
+// транзакции — отметка о завершении без fsync. Незавершённые записи при старте разбирает IntentRecovery.
+// fsync групповой: поток, дождавшийся блокировки, сбрасывает на диск всё, что успели дописать остальные,
+// и ожидавшие за ним потоки выходят без своего fsync
+@Component
+public class IntentJournal implements DisposableBean {
+    public enum Operation {
+        // from — подготовленный локальный файл, to — адрес в хранилище
+        PUT,
+        // from — адрес исходного объекта, to — адрес копии
+        COPY,
+        // перемещение from → to, fromKey нужен для возврата на место
+        MOVE,
+        // to — адрес удаляемого объекта
+        DELETE
+    }
+
+    public record Intent(Operation operation, long fileId, String from, String fromKey, String to, String toKey) {
+        public static Intent put(Long fileId, Path staged, String location, String key) {
+            return new Intent(Operation.PUT, idOf(fileId), staged.toString(), null, location, key);
+        }
+
+        public static Intent copy(Long fileId, String source, String location, String key) {
+            return new Intent(Operation.COPY, idOf(fileId), source, null, location, key);
+        }
+
+        public static Intent move(Long fileId, String fromLocation, String fromKey, String location, String key) {
+            return new Intent(Operation.MOVE, idOf(fileId), fromLocation, fromKey, location, key);
+        }
+
+        public static Intent delete(Long fileId, String location) {
+            return new Intent(Operation.DELETE, idOf(fileId), null, null, location, null);
+        }
+
+        // 0 — строка ещё без id; восстановление тогда решает только по адресу в files.storage_path
+        private static long idOf(Long fileId) {
+            return fileId == null ? 0 : fileId;
+        }
+    }
+
+    static final String FILE_NAME = "intents.log";
+
+    private static final byte BEGIN = 1;
+    private static final byte END = 2;
+    private static final int HEADER_BYTES = 8;
+
+    private static final Logger logger = LogManager.getLogger(IntentJournal.class);
+
+    private final Path file;
+    private final long maxBytes;
+
+    // порядок захвата: syncLock, затем appendLock — так сжатие не закрывает канал под выполняющимся fsync
+    private final Object appendLock = new Object();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private FileChannel channel;
+    private long fileSize;
+    // логические позиции: байты, дописанные с момента открытия, и байты, уже сброшенные на диск
+    private volatile long written;
+    private volatile long durable;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, Intent> pending = new ConcurrentHashMap<>();
+    private final SortedMap<Long, Intent> recovered;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    public IntentJournal(@Value("${app.storage.path:uploads}") String storageDir,
+                         @Value("${app.storage.journal.max-bytes:16777216}") long maxBytes) {
+        Path dir = Paths.get(storageDir).resolve(".journal");
+        this.file = dir.resolve(FILE_NAME);
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(dir);
+            this.recovered = read(file);
+            recovered.forEach(pending::put);
+            nextId.set(recovered.isEmpty() ? 1 : recovered.lastKey() + 1);
+            rewrite();
+        } catch (IOException e) {
+            logger.error("Ошибка открытия журнала намерений '{}'", file, e);
+            throw new RuntimeException("Не удалось открыть журнал намерений", e);
+        }
+        if (!recovered.isEmpty()) {
+            logger.warn("Журнал намерений: {} незавершённых операций с прошлого запуска", recovered.size());
+        }
+    }
+
+    // записи устойчивы на диске к моменту возврата; возвращает номера в порядке intents
+    public long[] begin(List<Intent> intents) throws IOException {
+        long[] ids = new long[intents.size()];
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = nextId.getAndIncrement();
+            records.writeBytes(frame(encodeBegin(ids[i], intents.get(i))));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            pending.put(ids[i], intents.get(i));
+        }
+        try {
+            sync(append(records.toByteArray(), ids.length));
+        } catch (IOException e) {
+            for (long id : ids) {
+                pending.remove(id);
+            }
+            throw e;
+        }
+        return ids;
+    }
+
+    public long begin(Intent intent) throws IOException {
+        return begin(List.of(intent))[0];
+    }
+
+    // отметка о завершении не требует fsync: потерянная отметка приведёт только к повторной, идемпотентной
+    // проверке операции при старте
+    public void end(long id) {
+        if (pending.remove(id) == null) {
+            return;
+        }
+        try {
+            ByteBuffer record = ByteBuffer.allocate(9).put(END).putLong(id);
+            append(frame(record.array()), 1);
+            if (fileSize > maxBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.error("Ошибка записи отметки о завершении операции {} в журнал", id, e);
+        }
+    }
+
+    // незавершённые операции предыдущего запуска, по возрастанию номера
+    public SortedMap<Long, Intent> recovered() {
+        return new TreeMap<>(recovered);
+    }
+
+    void resolved(long id) {
+        recovered.remove(id);
+        end(id);
+    }
+
+    // адреса, с которыми сейчас работают незавершённые операции: их не трогает очистка сирот
+    public Set<String> pendingLocations() {
+        return pending.values().stream()
+                .flatMap(intent -> Stream.of(intent.from(), intent.to()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    // на адрес пишет другая незавершённая операция этого узла, например загрузка, ещё не закоммиченная
+    public boolean isPendingTarget(String location, long exceptId) {
+        return pending.entrySet().stream()
+                .anyMatch(e -> e.getKey() != exceptId && location.equals(e.getValue().to()));
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long getAppended() {
+        return appended.get();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    private long append(byte[] records, int count) throws IOException {
+        synchronized (appendLock) {
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            fileSize += records.length;
+            written += records.length;
+            appended.addAndGet(count);
+            return written;
+        }
+    }
+
+    private void sync(long position) throws IOException {
+        if (durable >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durable >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (appendLock) {
+                target = written;
+                current = channel;
+            }
+            current.force(false);
+            durable = target;
+            syncs.incrementAndGet();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // в новый файл переносятся только незавершённые записи; замена атомарная, старый файл остаётся целым до неё
+    private void compact() throws IOException {
+        syncLock.lock();
+        try {
+            synchronized (appendLock) {
+                if (fileSize <= maxBytes) {
+                    return;
+                }
+                channel.close();
+                rewrite();
+                durable = written;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+        logger.debug("Журнал намерений сжат, незавершённых операций: {}", pending.size());
+    }
+
+    private void rewrite() throws IOException {
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        new TreeMap<>(pending).forEach((id, intent) -> records.writeBytes(frame(encodeBegin(id, intent))));
+        byte[] content = records.toByteArray();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = content.length;
+    }
+
+    private static void forceDirectory(Path dir) {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // не все файловые системы позволяют открыть каталог
+            logger.debug("fsync каталога '{}' недоступен: {}", dir, e.getMessage());
+        }
+    }
+
+    // запись: длина, CRC32C и содержимое. Оборванная при сбое последняя запись отбрасывается
+    private static byte[] frame(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .array();
+    }
+
+    private static byte[] encodeBegin(long id, Intent intent) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(BEGIN);
+            out.writeLong(id);
+            out.writeByte(intent.operation().ordinal());
+            out.writeLong(intent.fileId());
+            writeNullable(out, intent.from());
+            writeNullable(out, intent.fromKey());
+            writeNullable(out, intent.to());
+            writeNullable(out, intent.toKey());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static SortedMap<Long, Intent> read(Path file) throws IOException {
+        SortedMap<Long, Intent> open = new ConcurrentSkipListMap<>();
+        if (!Files.exists(file)) {
+            return open;
+        }
+        List<Long> ended = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            while (true) {
+                byte[] payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte type = record.readByte();
+                long id = record.readLong();
+                if (type == BEGIN) {
+                    Operation operation = Operation.values()[record.readUnsignedByte()];
+                    long fileId = record.readLong();
+                    open.put(id, new Intent(operation, fileId, readNullable(record), readNullable(record),
+                            readNullable(record), readNullable(record)));
+                } else if (type == END) {
+                    ended.add(id);
+                }
+            }
+        }
+        ended.forEach(open::remove);
+        return open;
+    }
+
+    private static byte[] readRecord(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int length;
+        int expected;
+        try {
+            length = data.readInt();
+            expected = data.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length <= 0 || length > 1 << 20) {
+            logger.warn("Журнал намерений: повреждённый хвост отброшен");
+            return null;
+        }
+        byte[] payload = new byte[length];
+        if (data.readNBytes(payload, 0, length) < length) {
+            logger.warn("Журнал намерений: оборванная последняя запись отброшена");
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != expected) {
+            logger.warn("Журнал намерений: запись с неверной контрольной суммой, хвост отброшен");
+            return null;
+        }
+        return payload;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        synchronized (appendLock) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
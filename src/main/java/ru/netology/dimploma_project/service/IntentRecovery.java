@@ -0,0 +1,126 @@
+package ru.netology.dimploma_project.service;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+
+// разбор операций, прерванных сбоем: исход транзакции определяется по строке files, которую она меняла.
+// Закоммиченная операция доделывается в хранилище, откаченная — отменяется. Каждое действие проверяет
+// текущее состояние, поэтому повторный разбор той же записи ничего не портит.
+// Выполняется при создании бина — до того, как веб-сервер начнёт принимать запросы
+@Component
+public class IntentRecovery {
+    private final IntentJournal journal;
+    private final FileRepository fileRepository;
+    private final StorageBackend storage;
+
+    private static final Logger logger = LogManager.getLogger(IntentRecovery.class);
+
+    public IntentRecovery(IntentJournal journal, FileRepository fileRepository, StorageBackend storage) {
+        this.journal = journal;
+        this.fileRepository = fileRepository;
+        this.storage = storage;
+    }
+
+    // возвращает число разобранных операций; неразобранные остаются в журнале до следующего старта
+    @PostConstruct
+    public int recover() {
+        int resolved = 0;
+        for (Map.Entry<Long, IntentJournal.Intent> entry : journal.recovered().entrySet()) {
+            try {
+                resolve(entry.getValue());
+                journal.resolved(entry.getKey());
+                resolved++;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Восстановление: операция {} {} не разобрана", entry.getKey(), entry.getValue(), e);
+            }
+        }
+        if (resolved > 0) {
+            logger.info("Восстановление по журналу намерений: разобрано операций — {}", resolved);
+        }
+        return resolved;
+    }
+
+    private void resolve(IntentJournal.Intent intent) throws IOException {
+        Optional<String> committedPath = committedPath(intent);
+        switch (intent.operation()) {
+            case PUT, COPY -> {
+                if (committedPath.filter(intent.to()::equals).isPresent()) {
+                    replayPut(intent);
+                } else {
+                    deleteUnreferenced(intent.to());
+                }
+                if (intent.operation() == IntentJournal.Operation.PUT) {
+                    FileStreams.deleteQuietly(Paths.get(intent.from()));
+                }
+            }
+            case MOVE -> {
+                if (committedPath.filter(intent.to()::equals).isPresent()) {
+                    moveIfMissing(intent.from(), intent.to(), intent.toKey());
+                } else if (committedPath.filter(intent.from()::equals).isPresent()) {
+                    moveIfMissing(intent.to(), intent.from(), intent.fromKey());
+                }
+            }
+            case DELETE -> {
+                if (committedPath.isEmpty()) {
+                    deleteUnreferenced(intent.to());
+                }
+            }
+        }
+    }
+
+    // операции без id — blob-объекты и загрузки до вставки строки — считаются закоммиченными,
+    // если на их адрес ссылается строка files
+    private Optional<String> committedPath(IntentJournal.Intent intent) {
+        if (intent.fileId() == 0) {
+            return Optional.of(intent.to()).filter(fileRepository::existsByStoragePath);
+        }
+        return fileRepository.findById(intent.fileId()).map(FileEntity::getStoragePath);
+    }
+
+    // строка вставлена, а содержимое до хранилища не дошло: переносим подготовленный файл или повторяем копию
+    private void replayPut(IntentJournal.Intent intent) throws IOException {
+        if (storage.exists(intent.to())) {
+            return;
+        }
+        if (intent.operation() == IntentJournal.Operation.PUT) {
+            Path staged = Paths.get(intent.from());
+            if (Files.exists(staged)) {
+                storage.put(intent.toKey(), staged);
+                logger.warn("Восстановление: загрузка '{}' перенесена в хранилище", intent.to());
+                return;
+            }
+        } else if (storage.exists(intent.from())) {
+            storage.copy(intent.from(), intent.toKey());
+            logger.warn("Восстановление: копия '{}' создана заново", intent.to());
+            return;
+        }
+        logger.error("Восстановление: содержимое файла '{}' потеряно, строка files id={} без объекта",
+                intent.to(), intent.fileId());
+    }
+
+    private void moveIfMissing(String from, String to, String toKey) throws IOException {
+        if (!storage.exists(to) && storage.exists(from)) {
+            storage.move(from, toKey);
+            logger.warn("Восстановление: '{}' перемещён в '{}'", from, to);
+        }
+    }
+
+    // адрес мог занять файл, загруженный после прерванной операции, — такой объект не трогаем
+    private void deleteUnreferenced(String location) throws IOException {
+        if (!fileRepository.existsByStoragePath(location) && storage.exists(location)) {
+            storage.delete(location);
+            logger.warn("Восстановление: удалён объект без строки в files '{}'", location);
+        }
+    }
+}
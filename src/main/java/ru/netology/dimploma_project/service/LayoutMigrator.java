@@ -0,0 +1,158 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// фоновый перенос файлов из раскладки flat в sharded при app.storage.layout=sharded, без остановки сервиса:
+// файл получает второй адрес (жёсткую ссылку), строка переключается на него условным UPDATE, а старый адрес
+// удаляется на следующем запуске, когда скачивания, прочитавшие строку до UPDATE, уже открыли файл.
+// Пока перенос идёт, читаются обе раскладки: адрес каждого файла записан в его строке.
+// Скорость ограничена max-files-per-second; после прохода, в котором переносить было нечего, перенос
+// останавливается до перезапуска. Включается явно: app.storage.layout-migration.enabled=true
+@Component
+@ConditionalOnProperty(name = "app.storage.layout-migration.enabled", havingValue = "true")
+public class LayoutMigrator {
+    private final FileRepository fileRepository;
+    private final StorageBackend storage;
+    private final StorageLayout layout;
+    private final IntentJournal journal;
+    private final int batchSize;
+    private final int maxFilesPerSecond;
+
+    private final AtomicLong position = new AtomicLong();
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // старые адреса перенесённых файлов, удаляются следующим запуском
+    private final Queue<String> retired = new ConcurrentLinkedQueue<>();
+    private long passMigrated;
+    private volatile boolean complete;
+
+    private static final Logger logger = LogManager.getLogger(LayoutMigrator.class);
+
+    public LayoutMigrator(FileRepository fileRepository,
+                          StorageBackend storage,
+                          StorageLayout layout,
+                          IntentJournal journal,
+                          @Value("${app.storage.layout-migration.batch-size:100}") int batchSize,
+                          @Value("${app.storage.layout-migration.max-files-per-second:50}") int maxFilesPerSecond) {
+        this.fileRepository = fileRepository;
+        this.storage = storage;
+        this.layout = layout;
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.maxFilesPerSecond = maxFilesPerSecond;
+    }
+
+    // одна пачка за запуск; возвращает число перенесённых файлов
+    @Scheduled(initialDelayString = "${app.storage.layout-migration.initial-delay-ms:120000}",
+            fixedDelayString = "${app.storage.layout-migration.interval-ms:1000}")
+    public int migrate() {
+        deleteRetired();
+        if (!layout.isSharded() || complete) {
+            return 0;
+        }
+        List<FileEntity> batch = fileRepository.findStoredAfter(position.get(), PageRequest.ofSize(batchSize));
+        if (batch.isEmpty()) {
+            position.set(0);
+            if (passMigrated == 0) {
+                complete = true;
+                logger.info("Перенос в раскладку sharded завершён: перенесено {}, ошибок {}",
+                        migrated.get(), failed.get());
+            }
+            passMigrated = 0;
+            return 0;
+        }
+        long startNanos = System.nanoTime();
+        int count = 0;
+        for (FileEntity fileEntity : batch) {
+            if (!StorageLayout.isSharded(fileEntity, storage) && migrate(fileEntity)) {
+                count++;
+                pace(startNanos, count);
+            }
+            position.set(fileEntity.getId());
+        }
+        passMigrated += count;
+        return count;
+    }
+
+    // намерение в журнале до ссылки: после сбоя IntentRecovery удалит новый адрес, если строка не переключилась
+    private boolean migrate(FileEntity fileEntity) {
+        String from = fileEntity.getStoragePath();
+        String key = StorageLayout.shardedKey(fileEntity.getId());
+        String to = storage.locate(key);
+        try {
+            long intent = journal.begin(IntentJournal.Intent.copy(fileEntity.getId(), from, to, key));
+            storage.link(from, key);
+            boolean relocated = fileRepository.relocate(fileEntity.getId(), from, to) == 1;
+            if (relocated) {
+                retired.add(from);
+                migrated.incrementAndGet();
+            } else if (!fileRepository.existsByStoragePath(to)) {
+                // строку удалили или переименование уже перенесло файл на этот адрес
+                storage.delete(to);
+            }
+            journal.end(intent);
+            return relocated;
+        } catch (NoSuchFileException e) {
+            failed.incrementAndGet();
+            logger.error("Файл id={} отсутствует в хранилище и не перенесён: '{}'", fileEntity.getId(), from);
+        } catch (IOException | RuntimeException e) {
+            // незакрытое намерение разберёт IntentRecovery при следующем старте
+            failed.incrementAndGet();
+            logger.error("Ошибка переноса файла id={} '{}' → '{}'", fileEntity.getId(), from, to, e);
+        }
+        return false;
+    }
+
+    private void deleteRetired() {
+        String location;
+        while ((location = retired.poll()) != null) {
+            try {
+                if (!fileRepository.existsByStoragePath(location)) {
+                    storage.delete(location);
+                }
+            } catch (IOException | RuntimeException e) {
+                // оставшийся файл без строки удалит OrphanSweeper
+                logger.warn("Не удалось удалить старый адрес '{}': {}", location, e.getMessage());
+            }
+        }
+    }
+
+    // средняя скорость с начала пачки не выше max-files-per-second
+    private void pace(long startNanos, int count) {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        long waitNanos = count * TimeUnit.SECONDS.toNanos(1) / maxFilesPerSecond - (System.nanoTime() - startNanos);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getMigrated() {
+        return migrated.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,247 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// файлы на локальном диске в <storage>/<key>; location — путь к файлу, как и до появления SPI,
+// поэтому уже сохранённые строки files.storage_path читаются без миграции.
+// Новое содержимое всегда пишется во временный файл и переносится под итоговое имя атомарным переименованием,
+// так что читатели не видят частично записанный файл; когда данные сбрасываются на диск, задаёт FsyncPolicy
+@Component
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalStorageBackend implements StorageBackend, DisposableBean {
+    private final Path root;
+    private final FsyncPolicy fsync;
+    private final ScheduledExecutorService flusher;
+    // файлы и каталоги, ожидающие фонового fsync при политике batched
+    private final Set<Path> dirtyFiles = ConcurrentHashMap.newKeySet();
+    private final Set<Path> dirtyDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicLong syncs = new AtomicLong();
+
+    private static final Logger logger = LogManager.getLogger(LocalStorageBackend.class);
+
+    // для тестов и бенчмарков: без fsync, как до появления политики
+    public LocalStorageBackend(String storageDir) {
+        this(storageDir, "none", 0);
+    }
+
+    @Autowired
+    public LocalStorageBackend(@Value("${app.storage.path:uploads}") String storageDir,
+                               @Value("${app.storage.fsync:none}") String fsync,
+                               @Value("${app.storage.fsync-interval-ms:100}") long fsyncIntervalMs) {
+        this.root = Paths.get(storageDir);
+        this.fsync = FsyncPolicy.fromId(fsync);
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            logger.error("Ошибка создания каталога '{}'", root, e);
+            throw new RuntimeException("Не удалось создать папку для хранения файлов", e);
+        }
+        if (this.fsync == FsyncPolicy.BATCHED) {
+            if (fsyncIntervalMs <= 0) {
+                throw new IllegalArgumentException("app.storage.fsync-interval-ms должен быть больше 0");
+            }
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("storage-fsync").daemon().factory());
+            flusher.scheduleWithFixedDelay(this::flush, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+            logger.info("Локальное хранилище '{}': fsync раз в {} мс", root, fsyncIntervalMs);
+        } else {
+            flusher = null;
+            logger.info("Локальное хранилище '{}': fsync {}", root, this.fsync.id());
+        }
+    }
+
+    @Override
+    public String locate(String key) {
+        return root.resolve(key).toString();
+    }
+
+    // подготовленный файл лежит в том же каталоге хранилища, поэтому перенос — атомарное переименование
+    @Override
+    public String put(String key, Path staged) throws IOException {
+        Path target = root.resolve(key);
+        createParent(target);
+        install(staged, target);
+        return target.toString();
+    }
+
+    @Override
+    public InputStream get(String location, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+        if (offset > 0) {
+            channel.position(offset);
+        }
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public ObjectInfo stat(String location) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(Paths.get(location), BasicFileAttributes.class);
+        return new ObjectInfo(attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    @Override
+    public Optional<Path> localPath(String location) {
+        return Optional.of(Paths.get(location));
+    }
+
+    @Override
+    public void delete(String location) throws IOException {
+        Files.deleteIfExists(Paths.get(location));
+    }
+
+    @Override
+    public String copy(String location, String key) throws IOException {
+        Path target = root.resolve(key);
+        createParent(target);
+        // копия собирается рядом с итоговым файлом; брошенную при сбое копию удалит OrphanSweeper
+        Path tmp = Files.createTempFile(target.getParent(), ".copy-", ".part");
+        try {
+            Files.copy(Paths.get(location), tmp, StandardCopyOption.REPLACE_EXISTING);
+            install(tmp, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return target.toString();
+    }
+
+    // ссылка не копирует данные, поэтому fsync нужен только каталогу. Оставшийся от прерванного переноса
+    // файл заменяется; если файловая система не умеет жёсткие ссылки, делается обычная копия
+    @Override
+    public String link(String location, String key) throws IOException {
+        Path target = root.resolve(key);
+        createParent(target);
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, Paths.get(location));
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            logger.debug("Жёсткая ссылка '{}' недоступна, файл копируется: {}", target, e.getMessage());
+            return copy(location, key);
+        }
+        syncDirectory(target.getParent());
+        return target.toString();
+    }
+
+    @Override
+    public String move(String location, String key) throws IOException {
+        Path source = Paths.get(location);
+        Path target = root.resolve(key);
+        createParent(target);
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // содержимое уже на диске, сбрасывать нужно только оба каталога
+        syncDirectory(target.getParent());
+        if (!source.getParent().equals(target.getParent())) {
+            syncDirectory(source.getParent());
+        }
+        return target.toString();
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsync;
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    private void createParent(Path target) throws IOException {
+        Path parent = target.getParent();
+        if (!Files.isDirectory(parent)) {
+            Files.createDirectories(parent);
+            // новый каталог пользователя должен пережить сбой вместе с файлом
+            syncDirectory(parent.getParent());
+        }
+    }
+
+    // содержимое должно оказаться на диске раньше переименования: иначе после сбоя под итоговым именем
+    // может остаться пустой файл
+    private void install(Path tmp, Path target) throws IOException {
+        if (fsync == FsyncPolicy.FILE || fsync == FsyncPolicy.DIRECTORY) {
+            force(tmp, false);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (fsync == FsyncPolicy.BATCHED) {
+            dirtyFiles.add(target);
+        }
+        syncDirectory(target.getParent());
+    }
+
+    private void syncDirectory(Path dir) {
+        if (fsync == FsyncPolicy.DIRECTORY) {
+            forceDirectory(dir);
+        } else if (fsync == FsyncPolicy.BATCHED) {
+            dirtyDirectories.add(dir);
+        }
+    }
+
+    // файлы сбрасываются раньше каталогов, в которых они переименованы, — тот же порядок, что и без пакетов
+    void flush() {
+        for (Path file : dirtyFiles) {
+            dirtyFiles.remove(file);
+            try {
+                force(file, false);
+            } catch (NoSuchFileException e) {
+                // файл успели удалить или переименовать, его каталог сбросится ниже
+            } catch (IOException e) {
+                logger.error("Ошибка fsync файла '{}'", file, e);
+            }
+        }
+        for (Path dir : dirtyDirectories) {
+            dirtyDirectories.remove(dir);
+            forceDirectory(dir);
+        }
+    }
+
+    private void force(Path file, boolean metadata) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(metadata);
+        }
+        syncs.incrementAndGet();
+    }
+
+    private void forceDirectory(Path dir) {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+            syncs.incrementAndGet();
+        } catch (IOException e) {
+            // не все файловые системы позволяют открыть каталог
+            logger.debug("fsync каталога '{}' недоступен: {}", dir, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flush();
+        }
+    }
+}
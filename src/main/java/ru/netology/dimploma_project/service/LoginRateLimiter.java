@@ -0,0 +1,113 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// ограничение попыток входа до обращения к БД: ведро токенов на имя пользователя и на IP-адрес.
+// Ведро хранится одним числом — моментом, когда оно снова станет полным (GCRA), и обновляется CAS без блокировок
+@Component
+public class LoginRateLimiter {
+    private static final Logger logger = LogManager.getLogger(LoginRateLimiter.class);
+
+    private final Buckets byUsername;
+    private final Buckets byAddress;
+    private final LongSupplier nanoTime;
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public LoginRateLimiter(@Value("${app.auth.rate-limit.username.burst:10}") int usernameBurst,
+                            @Value("${app.auth.rate-limit.username.per-minute:10}") int usernamePerMinute,
+                            @Value("${app.auth.rate-limit.ip.burst:50}") int addressBurst,
+                            @Value("${app.auth.rate-limit.ip.per-minute:120}") int addressPerMinute) {
+        this(usernameBurst, usernamePerMinute, addressBurst, addressPerMinute, System::nanoTime);
+    }
+
+    LoginRateLimiter(int usernameBurst, int usernamePerMinute, int addressBurst, int addressPerMinute,
+                     LongSupplier nanoTime) {
+        this.byUsername = new Buckets(usernameBurst, usernamePerMinute);
+        this.byAddress = new Buckets(addressBurst, addressPerMinute);
+        this.nanoTime = nanoTime;
+        logger.info("Лимит попыток входа: имя — {}/мин (запас {}), IP — {}/мин (запас {})",
+                usernamePerMinute, usernameBurst, addressPerMinute, addressBurst);
+    }
+
+    // 0 — попытка разрешена, иначе через сколько секунд повторить
+    public long tryAcquire(String username, String address) {
+        long now = nanoTime.getAsLong();
+        long waitNanos = byAddress.tryAcquire(address, now);
+        if (waitNanos == 0) {
+            // имена сравниваются без учёта регистра, чтобы перебор не обходил лимит сменой регистра
+            waitNanos = byUsername.tryAcquire(username.toLowerCase(Locale.ROOT), now);
+        }
+        if (waitNanos == 0) {
+            return 0;
+        }
+        rejected.incrementAndGet();
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    // полные вёдра ничем не отличаются от отсутствующих — удаляем их, чтобы перебор имён не раздувал карту
+    @Scheduled(fixedDelayString = "${app.auth.rate-limit.cleanup-interval-ms:60000}")
+    public void cleanup() {
+        long now = nanoTime.getAsLong();
+        byUsername.removeFull(now);
+        byAddress.removeFull(now);
+    }
+
+    public int size() {
+        return byUsername.size() + byAddress.size();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private static final class Buckets {
+        private final ConcurrentHashMap<String, AtomicLong> fullAt = new ConcurrentHashMap<>();
+        private final long intervalNanos;
+        private final long toleranceNanos;
+
+        Buckets(int burst, int perMinute) {
+            // perMinute <= 0 — ограничение отключено
+            this.intervalNanos = perMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / perMinute : 0;
+            this.toleranceNanos = intervalNanos * Math.max(0, burst - 1);
+        }
+
+        long tryAcquire(String key, long now) {
+            if (intervalNanos == 0) {
+                return 0;
+            }
+            AtomicLong bucket = fullAt.computeIfAbsent(key, k -> new AtomicLong(now));
+            while (true) {
+                long current = bucket.get();
+                long start = Math.max(current, now);
+                long excess = start - now - toleranceNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (bucket.compareAndSet(current, start + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        // попытка, попавшая между проверкой и удалением, может пройти без списания — допустимо для лимита
+        void removeFull(long now) {
+            fullAt.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+
+        int size() {
+            return fullAt.size();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.netology.dimploma_project.service;
+
+// вход временно отклонён: исчерпан лимит попыток или очередь проверки паролей заполнена
+public class LoginThrottledException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
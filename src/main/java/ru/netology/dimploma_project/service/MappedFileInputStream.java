@@ -0,0 +1,132 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// чтение большого файла через отображение в память окнами по REGION_SIZE: байты копируются из page cache
+// сразу в буфер записи ответа, без системных вызовов read и промежуточных буферов в куче.
+// skip только сдвигает позицию, поэтому Range-запрос отображает лишь нужный участок файла.
+// Окно освобождается сразу при переходе к следующему и при close, не дожидаясь сборщика мусора
+final class MappedFileInputStream extends InputStream {
+    static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    private static final Logger logger = LogManager.getLogger(MappedFileInputStream.class);
+    private static final MethodHandle UNMAP = unmapHandle();
+
+    private final FileChannel channel;
+    private final long size;
+    private final long regionSize;
+    private long position;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    MappedFileInputStream(Path path) throws IOException {
+        this(path, REGION_SIZE);
+    }
+
+    MappedFileInputStream(Path path, long regionSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        position++;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = current();
+        if (buffer == null) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, size - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        unmap(region);
+        region = null;
+        channel.close();
+    }
+
+    // окно, в которое попадает текущая позиция; null — конец файла
+    private ByteBuffer current() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        if (region == null || position < regionStart || position >= regionStart + region.capacity()) {
+            unmap(region);
+            region = null;
+            long length = Math.min(regionSize, size - position);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            regionStart = position;
+        }
+        region.position((int) (position - regionStart));
+        return region;
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || UNMAP == null) {
+            return;
+        }
+        try {
+            UNMAP.invoke(buffer);
+        } catch (Throwable e) {
+            logger.warn("Не удалось освободить отображение файла", e);
+        }
+    }
+
+    // публичного API освобождения MappedByteBuffer в Java 21 нет (FileChannel.map с Arena — preview),
+    // поэтому используется Unsafe.invokeCleaner из jdk.unsupported; без него окно освободит сборщик мусора
+    private static MethodHandle unmapHandle() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Явное освобождение отображённых файлов недоступно: {}", e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package ru.netology.dimploma_project.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// таймеры, счётчики байт и ошибок, число выполняющихся операций — по каждой файловой операции и авторизации;
+// тег size позволяет смотреть p99 отдельно для мелких и крупных файлов
+@Component
+public class OperationMetrics {
+    public static final String UPLOAD = "upload";
+    public static final String DOWNLOAD = "download";
+    public static final String DELETE = "delete";
+    public static final String RENAME = "rename";
+    public static final String COPY = "copy";
+    public static final String LIST = "list";
+    public static final String BATCH_DELETE = "batch-delete";
+    public static final String ZIP = "zip";
+    public static final String LOGIN = "login";
+    public static final String TOKEN = "token";
+    public static final String SCRUB = "scrub";
+
+    static final String STORAGE_PREFIX = "storage";
+    static final String AUTH_PREFIX = "auth";
+
+    private static final String NO_SIZE = "none";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    public OperationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Sample file(String operation) {
+        return start(STORAGE_PREFIX, operation);
+    }
+
+    public Sample auth(String operation) {
+        return start(AUTH_PREFIX, operation);
+    }
+
+    private Sample start(String prefix, String operation) {
+        AtomicInteger counter = active.computeIfAbsent(prefix + "." + operation, key -> {
+            AtomicInteger value = new AtomicInteger();
+            Gauge.builder(prefix + ".operations.active", value, AtomicInteger::get)
+                    .description("Операции, выполняющиеся в данный момент")
+                    .tag("operation", operation)
+                    .register(registry);
+            return value;
+        });
+        counter.incrementAndGet();
+        return new Sample(prefix, operation, counter, System.nanoTime());
+    }
+
+    public void received(String operation, long bytes) {
+        bytesCounter("received", operation).increment(bytes);
+    }
+
+    public void sent(String operation, long bytes) {
+        bytesCounter("sent", operation).increment(bytes);
+    }
+
+    // отдача файла идёт уже после выхода из сервиса, поэтому байты считаются по мере чтения потока:
+    // для Range-запросов учитывается только отданный диапазон
+    public InputStream countingSent(String operation, InputStream in) {
+        Counter counter = bytesCounter("sent", operation);
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    counter.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                int n = super.read(buffer, off, len);
+                if (n > 0) {
+                    counter.increment(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    private Counter bytesCounter(String direction, String operation) {
+        return Counter.builder(STORAGE_PREFIX + ".bytes." + direction)
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    static String sizeBucket(long bytes) {
+        if (bytes < 64 * 1024) {
+            return "lt64k";
+        }
+        if (bytes < 1024 * 1024) {
+            return "lt1m";
+        }
+        if (bytes < 16 * 1024 * 1024) {
+            return "lt16m";
+        }
+        if (bytes < 128 * 1024 * 1024) {
+            return "lt128m";
+        }
+        return "ge128m";
+    }
+
+    // причина — класс исходного исключения: IllegalArgumentException у нас почти всегда обёртка над IOException
+    static String causeOf(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getClass().getSimpleName();
+    }
+
+    public final class Sample {
+        private final String prefix;
+        private final String operation;
+        private final AtomicInteger active;
+        private final long startNanos;
+        private boolean finished;
+
+        private Sample(String prefix, String operation, AtomicInteger active, long startNanos) {
+            this.prefix = prefix;
+            this.operation = operation;
+            this.active = active;
+            this.startNanos = startNanos;
+        }
+
+        public void success() {
+            finish("success", NO_SIZE);
+        }
+
+        public void success(long bytes) {
+            finish("success", sizeBucket(bytes));
+        }
+
+        // отказ по вине клиента (неверный пароль, недействительный токен), не ошибка сервиса
+        public void denied() {
+            finish("denied", NO_SIZE);
+        }
+
+        public void failure(Throwable e) {
+            Counter.builder(prefix + ".errors")
+                    .description("Ошибки операций по причинам")
+                    .tags("operation", operation, "cause", causeOf(e))
+                    .register(registry)
+                    .increment();
+            finish("error", NO_SIZE);
+        }
+
+        private void finish(String outcome, String size) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            active.decrementAndGet();
+            Timer.builder(prefix + ".operation")
+                    .description("Длительность операции")
+                    .tags("operation", operation, "outcome", outcome, "size", size)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1_000))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
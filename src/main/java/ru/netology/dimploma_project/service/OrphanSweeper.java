@@ -0,0 +1,205 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// поиск файлов без строк в files: обход каталога хранилища сверяется с таблицей пачками по адресу объекта.
+// Кроме того удаляются забытые временные файлы загрузок. Файлы моложе grace и адреса незавершённых операций
+// журнала не трогаются — это загрузки, транзакция которых ещё не закоммичена. Служебные каталоги (.journal,
+// .blobs, .sessions) не обходятся: у blob-объектов и сессий загрузки своя очистка.
+// Для S3 проверяются только локальные временные каталоги
+@Component
+@ConditionalOnProperty(name = "app.storage.orphan-sweeper.enabled", havingValue = "true", matchIfMissing = true)
+public class OrphanSweeper {
+    private static final int BATCH_SIZE = 500;
+
+    private final FileRepository fileRepository;
+    private final IntentJournal journal;
+    private final Path root;
+    private final boolean localObjects;
+    private final Duration grace;
+    private final int maxDeletions;
+    private final boolean dryRun;
+
+    private final AtomicLong orphans = new AtomicLong();
+    private final AtomicLong temporary = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+
+    private static final Logger logger = LogManager.getLogger(OrphanSweeper.class);
+
+    public OrphanSweeper(FileRepository fileRepository,
+                         IntentJournal journal,
+                         @Value("${app.storage.path:uploads}") String storageDir,
+                         @Value("${app.storage.backend:local}") String backend,
+                         @Value("${app.storage.orphan-sweeper.grace-minutes:60}") long graceMinutes,
+                         @Value("${app.storage.orphan-sweeper.max-deletions:1000}") int maxDeletions,
+                         @Value("${app.storage.orphan-sweeper.dry-run:false}") boolean dryRun) {
+        this.fileRepository = fileRepository;
+        this.journal = journal;
+        this.root = Paths.get(storageDir);
+        this.localObjects = "local".equals(backend);
+        this.grace = Duration.ofMinutes(graceMinutes);
+        this.maxDeletions = maxDeletions;
+        this.dryRun = dryRun;
+    }
+
+    // возвращает число найденных файлов без строк и временных файлов
+    @Scheduled(initialDelayString = "${app.storage.orphan-sweeper.initial-delay-ms:300000}",
+            fixedDelayString = "${app.storage.orphan-sweeper.interval-ms:86400000}")
+    public int sweep() {
+        long cutoff = System.currentTimeMillis() - grace.toMillis();
+        Set<String> pending = journal.pendingLocations();
+        Pass pass = new Pass(cutoff, pending);
+        try {
+            sweepTemporary(root.resolve(".staging"), pass);
+            sweepTemporary(root.resolve(".blobs").resolve("tmp"), pass);
+            if (localObjects) {
+                sweepObjects(pass);
+            }
+        } catch (IOException e) {
+            logger.error("Ошибка обхода каталога хранилища '{}'", root, e);
+        }
+        runs.incrementAndGet();
+        if (pass.found > 0) {
+            logger.warn("Очистка хранилища: найдено {} файлов без строк и временных файлов{}",
+                    pass.found, dryRun ? " (dry-run, ничего не удалено)" : "");
+        }
+        return pass.found;
+    }
+
+    private void sweepTemporary(Path dir, Pass pass) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && pass.isStale(file)) {
+                    temporary.incrementAndGet();
+                    pass.remove(file, "временный файл");
+                }
+            }
+        }
+    }
+
+    private void sweepObjects(Pass pass) throws IOException {
+        List<Path> batch = new ArrayList<>(BATCH_SIZE);
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.equals(root) || !dir.getFileName().toString().startsWith(".")
+                        ? FileVisitResult.CONTINUE
+                        : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && attrs.lastModifiedTime().toMillis() < pass.cutoff) {
+                    batch.add(file);
+                    if (batch.size() == BATCH_SIZE) {
+                        checkBatch(batch, pass);
+                        batch.clear();
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.warn("Очистка хранилища: '{}' недоступен: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (!batch.isEmpty()) {
+            checkBatch(batch, pass);
+        }
+    }
+
+    // адрес ищется и в том виде, в каком его строит хранилище, и абсолютным — на случай строк,
+    // записанных с другим app.storage.path
+    private void checkBatch(List<Path> batch, Pass pass) throws IOException {
+        List<String> candidates = new ArrayList<>(batch.size() * 2);
+        for (Path file : batch) {
+            candidates.add(file.toString());
+            candidates.add(file.toAbsolutePath().normalize().toString());
+        }
+        Set<String> referenced = new HashSet<>(fileRepository.findExistingStoragePaths(candidates));
+        for (Path file : batch) {
+            String location = file.toString();
+            if (referenced.contains(location) || referenced.contains(file.toAbsolutePath().normalize().toString())
+                    || pass.pending.contains(location)) {
+                continue;
+            }
+            orphans.incrementAndGet();
+            pass.remove(file, "файл без строки в files");
+        }
+    }
+
+    public long getOrphans() {
+        return orphans.get();
+    }
+
+    public long getTemporary() {
+        return temporary.get();
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+
+    // состояние одного прохода: ограничение на число удалений защищает от ошибки конфигурации,
+    // при которой все файлы выглядели бы лишними
+    private final class Pass {
+        private final long cutoff;
+        private final Set<String> pending;
+        private int found;
+        private int deleted;
+
+        private Pass(long cutoff, Set<String> pending) {
+            this.cutoff = cutoff;
+            this.pending = pending;
+        }
+
+        private boolean isStale(Path file) throws IOException {
+            return Files.getLastModifiedTime(file).toMillis() < cutoff && !pending.contains(file.toString());
+        }
+
+        private void remove(Path file, String reason) throws IOException {
+            found++;
+            if (dryRun) {
+                logger.warn("Очистка хранилища: {} '{}'", reason, file);
+                return;
+            }
+            if (deleted >= maxDeletions) {
+                if (deleted == maxDeletions) {
+                    logger.error("Очистка хранилища: достигнут предел {} удалений за проход, остальное пропущено",
+                            maxDeletions);
+                    deleted++;
+                }
+                return;
+            }
+            Files.deleteIfExists(file);
+            deleted++;
+            logger.warn("Очистка хранилища: удалён {} '{}'", reason, file);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// PBKDF2-HMAC-SHA256 с солью, строка в users.password: "pbkdf2-sha256$итерации$соль$хэш" (base64).
+// Вычисление занимает сотни миллисекунд процессора, поэтому идёт в отдельном ограниченном пуле:
+// шторм входов упирается в очередь пула, а не отнимает процессор у передачи файлов.
+// Строки без префикса — пароли в открытом виде из старых записей, они заменяются хэшем при входе
+@Component
+public class PasswordHasher implements DisposableBean {
+    static final String PREFIX = "pbkdf2-sha256$";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final Logger logger = LogManager.getLogger(PasswordHasher.class);
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PasswordHasher(@Value("${app.auth.password.iterations:310000}") int iterations,
+                          @Value("${app.auth.password.threads:2}") int threads,
+                          @Value("${app.auth.password.queue-size:64}") int queueSize) {
+        if (iterations <= 0 || threads <= 0 || queueSize <= 0) {
+            throw new IllegalStateException("app.auth.password.*: значения должны быть положительными");
+        }
+        this.iterations = iterations;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), Thread.ofPlatform().name("password-hash-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Хэширование паролей: PBKDF2-HMAC-SHA256, {} итераций, {} потоков, очередь {}",
+                iterations, threads, queueSize);
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        secureRandom.nextBytes(salt);
+        byte[] hash = run(() -> pbkdf2(password, salt, iterations));
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    public boolean matches(String password, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            logger.warn("Хэш пароля в неизвестном формате");
+            return false;
+        }
+        int storedIterations;
+        byte[] salt;
+        byte[] expected;
+        // испорченная или отредактированная вручную строка — это неверный пароль, а не ошибка сервера
+        try {
+            storedIterations = Integer.parseInt(parts[0]);
+            salt = Base64.getDecoder().decode(parts[1]);
+            expected = Base64.getDecoder().decode(parts[2]);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Хэш пароля в неизвестном формате: {}", e.getMessage());
+            return false;
+        }
+        if (storedIterations <= 0 || salt.length == 0 || expected.length == 0) {
+            logger.warn("Хэш пароля в неизвестном формате");
+            return false;
+        }
+        byte[] actual = run(() -> pbkdf2(password, salt, storedIterations));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    // открытый пароль или хэш с другим числом итераций: после успешного входа пароль хэшируется заново
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    private byte[] run(Callable<byte[]> task) {
+        try {
+            return executor.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new LoginThrottledException("Too many login attempts, try again later", 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Проверка пароля прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка хэширования пароля", e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,75 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.netology.dimploma_project.dto.StorageUsageDto;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.UserRepository;
+
+// квоты на место в хранилище: занятый объём хранится счётчиком в users и меняется вместе с files
+// в одной транзакции, поэтому узнать его — одно чтение строки, а не сумма по всем файлам пользователя
+@Service
+public class QuotaService {
+    public static final String QUOTA_EXCEEDED = "Storage quota exceeded";
+
+    private final UserRepository userRepository;
+    // Long.MAX_VALUE — без ограничения
+    private final long defaultQuota;
+
+    private static final Logger logger = LogManager.getLogger(QuotaService.class);
+
+    public QuotaService(UserRepository userRepository,
+                        @Value("${app.quota.default-bytes:10737418240}") long defaultQuotaBytes) {
+        this.userRepository = userRepository;
+        this.defaultQuota = defaultQuotaBytes > 0 ? defaultQuotaBytes : Long.MAX_VALUE;
+    }
+
+    public StorageUsageDto getUsage(User owner) {
+        StorageUsageDto usage = userRepository.findUsage(owner.getId())
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        long quota = usage.getQuota() != null ? usage.getQuota() : defaultQuota;
+        return new StorageUsageDto(usage.getUsed(), quota == Long.MAX_VALUE ? null : quota);
+    }
+
+    // сколько ещё можно записать; используется как верхняя граница при приёме потока
+    public long remaining(User owner) {
+        StorageUsageDto usage = getUsage(owner);
+        if (usage.getQuota() == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, usage.getQuota() - usage.getUsed());
+    }
+
+    // ранний отказ, когда размер известен заранее, — до записи на диск
+    public void checkAvailable(User owner, long bytes) {
+        if (bytes > remaining(owner)) {
+            logger.warn("Пользователь '{}': превышение квоты, запрошено {} bytes", owner.getUsername(), bytes);
+            throw new IllegalArgumentException(QUOTA_EXCEEDED);
+        }
+    }
+
+    public void charge(User owner, long bytes) {
+        if (userRepository.charge(owner.getId(), bytes, defaultQuota) == 0) {
+            logger.warn("Пользователь '{}': превышение квоты, загружено {} bytes", owner.getUsername(), bytes);
+            throw new IllegalArgumentException(QUOTA_EXCEEDED);
+        }
+    }
+
+    public void release(User owner, long bytes) {
+        userRepository.release(owner.getId(), bytes);
+    }
+
+    // счётчики могут разойтись с files после ручных правок в БД или сбоев — периодически пересчитываем
+    @Scheduled(initialDelayString = "${app.quota.reconcile-interval-ms:86400000}",
+            fixedDelayString = "${app.quota.reconcile-interval-ms:86400000}")
+    public int reconcile() {
+        int updated = userRepository.reconcileUsage();
+        if (updated > 0) {
+            logger.warn("Сверка квот: исправлены счётчики у {} пользователей", updated);
+        }
+        return updated;
+    }
+}
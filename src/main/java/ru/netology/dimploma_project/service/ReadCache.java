@@ -0,0 +1,246 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+// кэш содержимого небольших популярных файлов в direct-буферах вне кучи с бюджетом в байтах.
+// Вытеснение W-TinyLFU: новые файлы попадают в окно LRU (1% бюджета), вытесненный из окна кандидат
+// допускается в основную область (SLRU: probation + protected), только если по частотам обращений он
+// популярнее файлов, которые придётся ради него вытеснить. Разовое скачивание большого архива
+// не вымывает из кэша часто читаемые файлы
+@Component
+public class ReadCache {
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final long maxBytes;
+    private final long maxFileSize;
+    private final long windowMax;
+    private final long protectedMax;
+
+    // LinkedHashMap в порядке доступа: первый элемент — давно не читавшийся
+    private final LinkedHashMap<Key, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Entry> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+    // у файла в кэше одна версия: запись по старому расположению убирается при появлении новой
+    private final Map<Long, Key> keysById = new HashMap<>();
+    private final FrequencySketch sketch;
+
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    private static final Logger logger = LogManager.getLogger(ReadCache.class);
+
+    // maxBytes = 0 отключает кэш
+    public ReadCache(@Value("${app.storage.read-cache.max-bytes:0}") long maxBytes,
+                     @Value("${app.storage.read-cache.max-file-size:1048576}") long maxFileSize) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxFileSize = Math.min(maxFileSize, this.maxBytes);
+        this.windowMax = (long) (this.maxBytes * WINDOW_SHARE);
+        this.protectedMax = (long) ((this.maxBytes - windowMax) * PROTECTED_SHARE);
+        // под частоты — примерно столько счётчиков, сколько файлов среднего размера помещается в кэш
+        long expectedEntries = maxFileSize > 0 ? this.maxBytes / Math.max(1, maxFileSize / 8) : 0;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(16, expectedEntries)));
+        if (this.maxBytes > 0) {
+            logger.info("Кэш чтения файлов: {} bytes, файлы до {} bytes", this.maxBytes, this.maxFileSize);
+        }
+    }
+
+    public boolean accepts(long size) {
+        return maxBytes > 0 && size <= maxFileSize;
+    }
+
+    // обращение учитывается в частотах и при промахе: так файл набирает популярность до попадания в кэш
+    public synchronized Optional<Entry> get(Key key) {
+        sketch.increment(key.hash());
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = protectedArea.get(key);
+        }
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry != null) {
+                probationBytes -= entry.size();
+                promote(key, entry);
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(entry);
+    }
+
+    // содержимое из кучи копируется в direct-буфер вне блокировки, direct-буфер берётся как есть;
+    // возвращаемую запись можно отдать клиенту, даже если в кэш она не попала
+    public Entry put(Key key, ByteBuffer content, long lastModified) {
+        ByteBuffer data = content.slice();
+        if (!data.isDirect()) {
+            data = ByteBuffer.allocateDirect(content.remaining()).put(content.duplicate()).flip();
+        }
+        Entry entry = new Entry(data.asReadOnlyBuffer(), lastModified);
+        if (!accepts(entry.size())) {
+            return entry;
+        }
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Key previous = keysById.put(key.fileId(), key);
+            if (previous != null) {
+                removeEntry(previous);
+            }
+            window.put(key, entry);
+            windowBytes += entry.size();
+            while (windowBytes > windowMax && !window.isEmpty()) {
+                Iterator<Map.Entry<Key, Entry>> it = window.entrySet().iterator();
+                Map.Entry<Key, Entry> candidate = it.next();
+                it.remove();
+                windowBytes -= candidate.getValue().size();
+                admit(candidate.getKey(), candidate.getValue(), evicted);
+            }
+        }
+        evictions.addAndGet(evicted.size());
+        return entry;
+    }
+
+    public synchronized void invalidate(long fileId) {
+        Key key = keysById.remove(fileId);
+        if (key != null) {
+            removeEntry(key);
+        }
+    }
+
+    // кандидат из окна против жертв из основной области: жертвы набираются с LRU-конца, пока не хватит места,
+    // и кандидат допускается, только если он чаще каждой из них
+    private void admit(Key key, Entry entry, List<Entry> evicted) {
+        long mainMax = maxBytes - windowMax;
+        if (entry.size() > mainMax) {
+            keysById.remove(key.fileId(), key);
+            rejections.incrementAndGet();
+            return;
+        }
+        long needed = probationBytes + protectedBytes + entry.size() - mainMax;
+        List<Key> victims = new ArrayList<>();
+        if (needed > 0) {
+            int frequency = sketch.frequency(key.hash());
+            for (LinkedHashMap<Key, Entry> area : List.of(probation, protectedArea)) {
+                for (Map.Entry<Key, Entry> victim : area.entrySet()) {
+                    if (needed <= 0) {
+                        break;
+                    }
+                    if (sketch.frequency(victim.getKey().hash()) >= frequency) {
+                        keysById.remove(key.fileId(), key);
+                        rejections.incrementAndGet();
+                        return;
+                    }
+                    victims.add(victim.getKey());
+                    needed -= victim.getValue().size();
+                }
+            }
+        }
+        for (Key victim : victims) {
+            keysById.remove(victim.fileId(), victim);
+            evicted.add(removeEntry(victim));
+        }
+        probation.put(key, entry);
+        probationBytes += entry.size();
+    }
+
+    // повторное обращение переводит запись в protected; лишнее из protected возвращается в probation
+    private void promote(Key key, Entry entry) {
+        protectedArea.put(key, entry);
+        protectedBytes += entry.size();
+        Iterator<Map.Entry<Key, Entry>> it = protectedArea.entrySet().iterator();
+        while (protectedBytes > protectedMax && it.hasNext()) {
+            Map.Entry<Key, Entry> demoted = it.next();
+            if (demoted.getKey().equals(key)) {
+                continue;
+            }
+            it.remove();
+            protectedBytes -= demoted.getValue().size();
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().size();
+        }
+    }
+
+    private Entry removeEntry(Key key) {
+        Entry entry = window.remove(key);
+        if (entry != null) {
+            windowBytes -= entry.size();
+            return entry;
+        }
+        entry = probation.remove(key);
+        if (entry != null) {
+            probationBytes -= entry.size();
+            return entry;
+        }
+        entry = protectedArea.remove(key);
+        if (entry != null) {
+            protectedBytes -= entry.size();
+        }
+        return entry;
+    }
+
+    public synchronized long bytes() {
+        return windowBytes + probationBytes + protectedBytes;
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedArea.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // расположение в хранилище входит в ключ как версия содержимого: после переименования
+    // старая запись недостижима, даже если инвалидация ещё не выполнена
+    public record Key(long fileId, String location) {
+        long hash() {
+            return FrequencySketch.spread(fileId * 31 + location.hashCode());
+        }
+    }
+
+    // буфер только для чтения; каждый читатель работает со своей копией позиции через duplicate()
+    public record Entry(ByteBuffer data, long lastModified) {
+        public int size() {
+            return data.capacity();
+        }
+    }
+}
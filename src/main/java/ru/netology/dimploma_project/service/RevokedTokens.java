@@ -0,0 +1,68 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.repository.TokenRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+// отозванные, но ещё не истёкшие подписанные токены в виде фильтра Блума: проверка токена на узле
+// не обращается к БД, пока фильтр не ответит «возможно отозван» — тогда решает строка в tokens.
+// Выход на этом узле виден сразу, на остальных — после очередного обновления фильтра из БД
+@Component
+public class RevokedTokens {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final TokenRepository tokenRepository;
+    private final TokenSigner tokenSigner;
+
+    // предыдущий фильтр проверяется до следующего обновления: отзыв, добавленный локально, пока строился
+    // новый фильтр, мог не попасть в его выборку из БД
+    private volatile Filters filters = new Filters(newFilter(0), newFilter(0));
+    private volatile int size;
+
+    private static final Logger logger = LogManager.getLogger(RevokedTokens.class);
+
+    public RevokedTokens(TokenRepository tokenRepository, TokenSigner tokenSigner) {
+        this.tokenRepository = tokenRepository;
+        this.tokenSigner = tokenSigner;
+    }
+
+    public boolean mightBeRevoked(String token) {
+        Filters current = filters;
+        return current.active.mightContain(token) || current.previous.mightContain(token);
+    }
+
+    public void add(String token) {
+        filters.active.put(token);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.auth.revocations.refresh-ms:10000}")
+    public void refresh() {
+        if (!tokenSigner.isEnabled()) {
+            return;
+        }
+        List<String> revoked = tokenRepository.findRevokedTokens(Instant.now());
+        BloomFilter rebuilt = newFilter(revoked.size());
+        revoked.forEach(rebuilt::put);
+        filters = new Filters(rebuilt, filters.active);
+        size = revoked.size();
+        logger.debug("Фильтр отозванных токенов обновлён: {} токенов", revoked.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // запас вдвое под отзывы, которые придут до следующего обновления
+    private static BloomFilter newFilter(int revoked) {
+        return new BloomFilter(Math.max(MIN_CAPACITY, revoked * 2), FALSE_POSITIVE_RATE);
+    }
+
+    private record Filters(BloomFilter active, BloomFilter previous) {
+    }
+}
@@ -0,0 +1,261 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// объектное хранилище, совместимое с S3 (AWS S3, MinIO, Ceph RGW); location — ключ объекта в бакете.
+// Крупные файлы загружаются multipart-загрузкой: части читаются из подготовленного файла по смещениям
+// и отправляются параллельно, неудачная загрузка отменяется, чтобы в бакете не оставались части
+@Component
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+public class S3StorageBackend implements StorageBackend, DisposableBean {
+    // ограничения S3: часть не меньше 5 MB (кроме последней), не больше 10 000 частей,
+    // одиночное копирование — до 5 GB
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+    static final long MAX_SINGLE_COPY = 5L * 1024 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final long partSize;
+    private final ExecutorService partExecutor;
+
+    private static final Logger logger = LogManager.getLogger(S3StorageBackend.class);
+
+    public S3StorageBackend(S3Client s3,
+                            @Value("${app.storage.s3.bucket}") String bucket,
+                            @Value("${app.storage.s3.part-size:8388608}") long partSize,
+                            @Value("${app.storage.s3.upload-threads:4}") int uploadThreads) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+        this.partExecutor = Executors.newFixedThreadPool(uploadThreads, Thread.ofPlatform().name("s3-part-", 0).factory());
+        logger.info("Хранилище S3: бакет '{}', часть {} bytes, потоков загрузки {}", bucket, this.partSize, uploadThreads);
+    }
+
+    @Override
+    public String locate(String key) {
+        return key;
+    }
+
+    @Override
+    public String put(String key, Path staged) throws IOException {
+        long size = Files.size(staged);
+        try {
+            if (size <= partSize) {
+                s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentLength(size).build(),
+                        RequestBody.fromFile(staged));
+            } else {
+                putMultipart(key, staged, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Ошибка записи объекта '" + key + "' в S3", e);
+        }
+        Files.deleteIfExists(staged);
+        return key;
+    }
+
+    private void putMultipart(String key, Path staged, long size) throws IOException {
+        long effectivePartSize = partSizeFor(size);
+        int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(key).build()).uploadId();
+        logger.debug("Multipart-загрузка '{}': {} bytes, {} частей", key, size, partCount);
+
+        List<Future<CompletedPart>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * effectivePartSize;
+                long length = Math.min(effectivePartSize, size - offset);
+                futures.add(partExecutor.submit(() -> uploadPart(key, uploadId, partNumber, staged, offset, length)));
+            }
+            List<CompletedPart> parts = new ArrayList<>(partCount);
+            for (Future<CompletedPart> future : futures) {
+                parts.add(future.get());
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId, futures);
+            throw new IOException("Загрузка '" + key + "' прервана", e);
+        } catch (ExecutionException | SdkException e) {
+            abort(key, uploadId, futures);
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IOException("Ошибка multipart-загрузки '" + key + "' в S3", cause);
+        }
+    }
+
+    // каждая часть открывает файл заново: так SDK может повторить отправку части после сетевой ошибки
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, Path staged,
+                                     long offset, long length) {
+        UploadPartResponse response = s3.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket).key(key).uploadId(uploadId)
+                        .partNumber(partNumber).contentLength(length)
+                        .build(),
+                RequestBody.fromContentProvider(() -> slice(staged, offset, length), length,
+                        "application/octet-stream"));
+        return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+    }
+
+    private static InputStream slice(Path file, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(offset);
+            return FileStreams.bounded(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка чтения части файла '" + file + "'", e);
+        }
+    }
+
+    private void abort(String key, String uploadId, List<Future<CompletedPart>> futures) {
+        futures.forEach(f -> f.cancel(true));
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId).build());
+        } catch (SdkException e) {
+            logger.error("Не удалось отменить multipart-загрузку '{}' ({})", key, uploadId, e);
+        }
+    }
+
+    // размер части увеличивается, если файл не укладывается в MAX_PARTS частей заданного размера
+    long partSizeFor(long size) {
+        long minimum = (size + MAX_PARTS - 1) / MAX_PARTS;
+        return Math.max(partSize, minimum);
+    }
+
+    @Override
+    public InputStream get(String location, long offset) throws IOException {
+        GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(location);
+        if (offset > 0) {
+            request.range("bytes=" + offset + "-");
+        }
+        try {
+            return s3.getObject(request.build());
+        } catch (NoSuchKeyException e) {
+            throw notFound(location, e);
+        } catch (SdkException e) {
+            throw new IOException("Ошибка чтения объекта '" + location + "' из S3", e);
+        }
+    }
+
+    @Override
+    public ObjectInfo stat(String location) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(location).build());
+            return new ObjectInfo(head.contentLength(), head.lastModified().toEpochMilli());
+        } catch (NoSuchKeyException e) {
+            throw notFound(location, e);
+        } catch (SdkException e) {
+            throw new IOException("Ошибка чтения метаданных объекта '" + location + "' из S3", e);
+        }
+    }
+
+    @Override
+    public void delete(String location) throws IOException {
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(location).build());
+        } catch (SdkException e) {
+            throw new IOException("Ошибка удаления объекта '" + location + "' из S3", e);
+        }
+    }
+
+    // копирование выполняется на стороне S3, данные через приложение не проходят
+    @Override
+    public String copy(String location, String key) throws IOException {
+        try {
+            long size = stat(location).size();
+            if (size <= MAX_SINGLE_COPY) {
+                s3.copyObject(CopyObjectRequest.builder()
+                        .sourceBucket(bucket).sourceKey(location)
+                        .destinationBucket(bucket).destinationKey(key)
+                        .build());
+            } else {
+                copyMultipart(location, key, size);
+            }
+            return key;
+        } catch (SdkException e) {
+            throw new IOException("Ошибка копирования объекта '" + location + "' в '" + key + "'", e);
+        }
+    }
+
+    // данные при копировании частями не проходят через приложение, поэтому части берутся крупными
+    private void copyMultipart(String location, String key, long size) throws IOException {
+        long effectivePartSize = Math.max(partSizeFor(size), MAX_SINGLE_COPY / 10);
+        int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(key).build()).uploadId();
+
+        List<Future<CompletedPart>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long first = i * effectivePartSize;
+                long last = Math.min(first + effectivePartSize, size) - 1;
+                futures.add(partExecutor.submit(() -> {
+                    UploadPartCopyResponse response = s3.uploadPartCopy(UploadPartCopyRequest.builder()
+                            .sourceBucket(bucket).sourceKey(location)
+                            .destinationBucket(bucket).destinationKey(key)
+                            .uploadId(uploadId).partNumber(partNumber)
+                            .copySourceRange("bytes=" + first + "-" + last)
+                            .build());
+                    return CompletedPart.builder().partNumber(partNumber)
+                            .eTag(response.copyPartResult().eTag()).build();
+                }));
+            }
+            List<CompletedPart> parts = new ArrayList<>(partCount);
+            for (Future<CompletedPart> future : futures) {
+                parts.add(future.get());
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId, futures);
+            throw new IOException("Копирование '" + location + "' прервано", e);
+        } catch (ExecutionException | SdkException e) {
+            abort(key, uploadId, futures);
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IOException("Ошибка копирования '" + location + "' в '" + key + "'", cause);
+        }
+    }
+
+    private static NoSuchFileException notFound(String location, Exception cause) {
+        NoSuchFileException e = new NoSuchFileException(location);
+        e.initCause(cause);
+        return e;
+    }
+
+    @Override
+    public void destroy() {
+        partExecutor.shutdownNow();
+    }
+}
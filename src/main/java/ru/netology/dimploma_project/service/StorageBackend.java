@@ -0,0 +1,63 @@
+package ru.netology.dimploma_project.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+// хранилище содержимого файлов, метаданные остаются в БД.
+// key — путь объекта внутри хранилища ("artem/report.txt"), location — строка, которая сохраняется
+// в files.storage_path / blobs.storage_path и по которой объект читается и удаляется
+public interface StorageBackend {
+
+    // адрес объекта известен до записи: строка в БД вставляется раньше, чем содержимое попадает в хранилище
+    String locate(String key);
+
+    // переносит подготовленный локальный файл в хранилище; после успешного вызова staged не существует
+    String put(String key, Path staged) throws IOException;
+
+    default InputStream get(String location) throws IOException {
+        return get(location, 0);
+    }
+
+    // чтение с позиции offset до конца объекта
+    InputStream get(String location, long offset) throws IOException;
+
+    // NoSuchFileException, если объекта нет
+    ObjectInfo stat(String location) throws IOException;
+
+    default boolean exists(String location) throws IOException {
+        try {
+            stat(location);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    // отсутствующий объект ошибкой не считается
+    void delete(String location) throws IOException;
+
+    String copy(String location, String key) throws IOException;
+
+    // второй адрес того же содержимого на время переноса, когда по старому адресу ещё читают;
+    // объекты не меняются на месте, поэтому на локальном диске достаточно жёсткой ссылки
+    default String link(String location, String key) throws IOException {
+        return copy(location, key);
+    }
+
+    // путь к объекту в локальной файловой системе, если он там лежит: такой объект можно отобразить в память
+    default Optional<Path> localPath(String location) {
+        return Optional.empty();
+    }
+
+    default String move(String location, String key) throws IOException {
+        String target = copy(location, key);
+        delete(location);
+        return target;
+    }
+
+    record ObjectInfo(long size, long lastModified) {
+    }
+}
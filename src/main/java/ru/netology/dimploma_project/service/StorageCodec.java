@@ -0,0 +1,74 @@
+package ru.netology.dimploma_project.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// кодек, которым файл сжат на диске; id хранится в files.codec
+public enum StorageCodec {
+    NONE("none") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+    // быстрый кодек: сжатие дешевле записи на диск даже на одном ядре
+    LZ4("lz4") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new LZ4FrameInputStream(in);
+        }
+    },
+    // лучше сжимает текст и логи ценой нагрузки на процессор при загрузке
+    ZSTD("zstd") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new ZstdOutputStream(out, ZSTD_LEVEL);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    private static final int ZSTD_LEVEL = 3;
+
+    private final String id;
+
+    StorageCodec(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public abstract OutputStream compress(OutputStream out) throws IOException;
+
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    public static StorageCodec fromId(String id) {
+        for (StorageCodec codec : values()) {
+            if (codec.id.equalsIgnoreCase(id)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный кодек хранения: " + id);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.model.User;
+
+// раскладка ключей хранилища для новых файлов:
+// flat — <username>/<filename>, все файлы пользователя в одном каталоге;
+// sharded — objects/<xx>/<yy>/<id>: два уровня по 256 каталогов, выбранных по хэшу id строки files,
+// поэтому в одном каталоге не копятся сотни тысяч записей, а путь не зависит от имени файла.
+// Адрес хранится в files.storage_path целиком, так что файлы обеих раскладок читаются одинаково;
+// перенос старых файлов — LayoutMigrator
+@Component
+public class StorageLayout {
+    static final String SHARDED_PREFIX = "objects/";
+
+    private final boolean sharded;
+
+    private static final Logger logger = LogManager.getLogger(StorageLayout.class);
+
+    public StorageLayout(@Value("${app.storage.layout:flat}") String layout) {
+        this.sharded = switch (layout.toLowerCase()) {
+            case "flat" -> false;
+            case "sharded" -> true;
+            default -> throw new IllegalArgumentException("Неизвестная раскладка хранилища: " + layout);
+        };
+        logger.info("Раскладка хранилища: {}", layout);
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    // id известен только после вставки строки, для раскладки flat он не нужен
+    String keyFor(User owner, String filename, Long id) {
+        return sharded ? shardedKey(id) : flatKey(owner, filename);
+    }
+
+    static String flatKey(User owner, String filename) {
+        return owner.getUsername() + "/" + filename;
+    }
+
+    // мультипликативный хэш Фибоначчи: старшие байты произведения равномерно распределены и для подряд
+    // идущих id, так что соседние загрузки попадают в разные каталоги
+    static String shardedKey(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return String.format("%s%02x/%02x/%d", SHARDED_PREFIX, hash >>> 56, (hash >>> 48) & 0xFF, id);
+    }
+
+    // лежит ли содержимое по адресу, который зависит только от id: такой файл переименовывается без перемещения
+    static boolean isSharded(FileEntity fileEntity, StorageBackend storage) {
+        return fileEntity.getId() != null
+                && storage.locate(shardedKey(fileEntity.getId())).equals(fileEntity.getStoragePath());
+    }
+}
@@ -0,0 +1,55 @@
+package ru.netology.dimploma_project.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// поток объекта хранилища, который открывается при первом чтении: skip() до этого лишь сдвигает начальную
+// позицию, поэтому Range-запрос, который Spring обслуживает через skip, превращается в чтение с нужного смещения
+// (ranged GET для S3) вместо чтения и отбрасывания всего, что лежит до начала диапазона
+final class StoredObjectInputStream extends InputStream {
+    private final StorageBackend storage;
+    private final String location;
+    private long offset;
+    private InputStream in;
+
+    StoredObjectInputStream(StorageBackend storage, String location) {
+        this.storage = storage;
+        this.location = location;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return open().read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        return open().read(buffer, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (in == null) {
+            if (n <= 0) {
+                return 0;
+            }
+            offset += n;
+            return n;
+        }
+        return in.skip(n);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private InputStream open() throws IOException {
+        if (in == null) {
+            in = storage.get(location, offset);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,124 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// кэш token → (id, имя) пользователя перед TokenRepository; запись живёт не дольше срока токена и не дольше ttl.
+// Хранится проекция, а не JPA-сущность: она не держит сессию и не устаревает вместе с ней.
+// LRU на LinkedHashMap в порядке доступа: при переполнении за O(1) вытесняется давно не читанная запись
+@Component
+public class TokenCache {
+    private final Map<String, Entry> entries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxSize;
+    private final Duration ttl;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final Logger logger = LogManager.getLogger(TokenCache.class);
+
+    public TokenCache(@Value("${app.auth.token-cache.max-size:10000}") int maxSize,
+                      @Value("${app.auth.token-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > TokenCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        logger.info("Кэш токенов: max-size={}, ttl={}", maxSize, ttl);
+    }
+
+    public Optional<AuthPrincipal> get(String token) {
+        Instant now = Instant.now();
+        lock.lock();
+        try {
+            Entry entry = entries.get(token);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            if (!entry.expiresAt().isAfter(now)) {
+                entries.remove(token);
+                evictions.incrementAndGet();
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            hits.incrementAndGet();
+            return Optional.of(entry.principal());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(String token, AuthPrincipal principal, Instant tokenExpiresAt) {
+        if (maxSize <= 0) {
+            return;
+        }
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(ttl);
+        if (tokenExpiresAt.isBefore(expiresAt)) {
+            expiresAt = tokenExpiresAt;
+        }
+        if (!expiresAt.isAfter(now)) {
+            return;
+        }
+        lock.lock();
+        try {
+            entries.put(token, new Entry(principal, expiresAt));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String token) {
+        lock.lock();
+        try {
+            entries.remove(token);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private record Entry(AuthPrincipal principal, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,59 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.netology.dimploma_project.repository.TokenRepository;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+// периодическая очистка просроченных токенов пачками, каждая пачка — отдельная транзакция;
+// отозванные токены удаляются так же, по истечении срока
+@Component
+@ConditionalOnProperty(name = "app.auth.token-reaper.enabled", havingValue = "true", matchIfMissing = true)
+public class TokenReaper {
+    private final TokenRepository tokenRepository;
+    private final int batchSize;
+
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+
+    private static final Logger logger = LogManager.getLogger(TokenReaper.class);
+
+    public TokenReaper(TokenRepository tokenRepository,
+                       @Value("${app.auth.token-reaper.batch-size:1000}") int batchSize) {
+        this.tokenRepository = tokenRepository;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${app.auth.token-reaper.initial-delay-ms:60000}",
+            fixedDelayString = "${app.auth.token-reaper.interval-ms:3600000}")
+    public long reap() {
+        Instant now = Instant.now();
+        long total = 0;
+        int deleted;
+        do {
+            deleted = tokenRepository.deleteExpiredBatch(now, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+
+        reclaimed.addAndGet(total);
+        runs.incrementAndGet();
+        if (total > 0) {
+            logger.info("Очистка токенов: удалено {} просроченных токенов", total);
+        }
+        return total;
+    }
+
+    public long getReclaimed() {
+        return reclaimed.get();
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+}
@@ -0,0 +1,142 @@
+package ru.netology.dimploma_project.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// самопроверяемые токены <kid>.<payload>.<hmac>: payload содержит id и имя пользователя, срок действия
+// и случайный nonce, подпись — HMAC-SHA256 ключом kid. Проверка не обращается к БД.
+// Ротация ключей: новый ключ добавляется в app.auth.signing.keys на всех узлах, затем становится
+// активным (app.auth.signing.active-key), старый удаляется, когда истекут подписанные им токены
+@Component
+public class TokenSigner {
+    static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+    private static final int NONCE_BYTES = 12;
+
+    private final Map<String, Mac> keys = new LinkedHashMap<>();
+    private final String activeKeyId;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+
+    private static final Logger logger = LogManager.getLogger(TokenSigner.class);
+
+    // keys — список "kid:ключ в base64", пустой список отключает подписанные токены
+    public TokenSigner(@Value("${app.auth.signing.keys:}") String keyList,
+                       @Value("${app.auth.signing.active-key:}") String activeKeyId) {
+        for (String entry : keyList.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalStateException("Ключ подписи должен иметь вид kid:base64");
+            }
+            String kid = entry.substring(0, colon).trim();
+            byte[] secret = Base64.getDecoder().decode(entry.substring(colon + 1).trim());
+            if (secret.length < MIN_KEY_BYTES) {
+                throw new IllegalStateException("Ключ подписи '" + kid + "' короче " + MIN_KEY_BYTES + " байт");
+            }
+            keys.put(kid, mac(secret));
+        }
+        if (keys.isEmpty()) {
+            this.activeKeyId = null;
+            logger.info("Подписанные токены отключены");
+            return;
+        }
+        this.activeKeyId = activeKeyId.isBlank() ? keys.keySet().iterator().next() : activeKeyId;
+        if (!keys.containsKey(this.activeKeyId)) {
+            throw new IllegalStateException("Активный ключ подписи '" + this.activeKeyId + "' не задан");
+        }
+        logger.info("Подписанные токены включены: ключи {}, активный '{}'", keys.keySet(), this.activeKeyId);
+    }
+
+    public boolean isEnabled() {
+        return activeKeyId != null;
+    }
+
+    // непрозрачные токены — base64url без точек, поэтому формат определяется без разбора
+    public static boolean isSigned(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    public String sign(long userId, String username, Instant expiresAt) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        byte[] nonce = new byte[NONCE_BYTES];
+        secureRandom.nextBytes(nonce);
+        ByteBuffer payload = ByteBuffer.allocate(8 + 8 + NONCE_BYTES + name.length)
+                .putLong(userId)
+                .putLong(expiresAt.getEpochSecond())
+                .put(nonce)
+                .put(name);
+        String signed = activeKeyId + "." + encoder.encodeToString(payload.array());
+        return signed + "." + encoder.encodeToString(hmac(activeKeyId, signed));
+    }
+
+    // пустой результат — подпись неверна, ключ неизвестен или токен испорчен; срок действия не проверяется
+    public Optional<Claims> verify(String token) {
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last == first) {
+            return Optional.empty();
+        }
+        String kid = token.substring(0, first);
+        if (!keys.containsKey(kid)) {
+            return Optional.empty();
+        }
+        try {
+            byte[] expected = hmac(kid, token.substring(0, last));
+            byte[] actual = decoder.decode(token.substring(last + 1));
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return Optional.empty();
+            }
+            ByteBuffer payload = ByteBuffer.wrap(decoder.decode(token.substring(first + 1, last)));
+            long userId = payload.getLong();
+            Instant expiresAt = Instant.ofEpochSecond(payload.getLong());
+            payload.position(payload.position() + NONCE_BYTES);
+            String username = StandardCharsets.UTF_8.decode(payload).toString();
+            return Optional.of(new Claims(userId, username, expiresAt));
+        } catch (IllegalArgumentException | java.nio.BufferUnderflowException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Mac не потокобезопасен: каждый вызов работает с копией инициализированного экземпляра
+    private byte[] hmac(String kid, String data) {
+        try {
+            Mac mac = (Mac) keys.get(kid).clone();
+            return mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Mac mac(byte[] secret) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record Claims(long userId, String username, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,57 @@
+package ru.netology.dimploma_project.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// имена, которых нет в users: повторный вход с таким именем отклоняется без запроса к БД.
+// Запись живёт ttl — пользователь, добавленный в БД напрямую, сможет войти не позже чем через ttl
+@Component
+public class UnknownUserCache {
+    private final ConcurrentHashMap<String, Long> expiresAt = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    public UnknownUserCache(@Value("${app.auth.unknown-user-cache.max-size:10000}") int maxSize,
+                            @Value("${app.auth.unknown-user-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public boolean contains(String username) {
+        Long until = expiresAt.get(username);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() <= 0) {
+            expiresAt.remove(username, until);
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    public void add(String username) {
+        if (maxSize <= 0) {
+            return;
+        }
+        // при переборе случайных имён карта заполняется быстро: сбрасываем её целиком вместо поиска старых записей
+        if (expiresAt.size() >= maxSize) {
+            expiresAt.clear();
+        }
+        expiresAt.put(username, System.nanoTime() + ttlNanos);
+    }
+
+    public int size() {
+        return expiresAt.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+}
@@ -0,0 +1,295 @@
+package ru.netology.dimploma_project.service;
+
+import jakarta.transaction.Transactional;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.netology.dimploma_project.model.UploadSession;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.UploadSessionRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// загрузка больших файлов по частям: части можно слать параллельно и повторно,
+// после обрыва клиент узнаёт, какие части уже получены, и досылает только недостающие
+@Service
+public class UploadSessionService {
+    private final UploadSessionRepository sessionRepository;
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final QuotaService quotaService;
+    private final Path sessionsDir;
+    private final long maxChunkSize;
+    private final Duration ttl;
+    // блокировка на сессию: готовая часть переносится в каталог сессии под блокировкой чтения,
+    // сборка, отмена и очистка берут блокировку записи. Приём части из сети идёт без блокировки,
+    // поэтому медленный клиент не задерживает ни свою, ни чужие сессии
+    private final Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+
+    private static final String CHUNK_SUFFIX = ".chunk";
+
+    private static final Logger logger = LogManager.getLogger(UploadSessionService.class);
+
+    public UploadSessionService(UploadSessionRepository sessionRepository,
+                                FileRepository fileRepository,
+                                FileService fileService,
+                                QuotaService quotaService,
+                                @Value("${app.storage.path:uploads}") String storageDir,
+                                @Value("${app.upload-session.max-chunk-size:67108864}") long maxChunkSize,
+                                @Value("${app.upload-session.ttl-hours:24}") long ttlHours) {
+        this.sessionRepository = sessionRepository;
+        this.fileRepository = fileRepository;
+        this.fileService = fileService;
+        this.quotaService = quotaService;
+        this.sessionsDir = Paths.get(storageDir).resolve(".sessions");
+        this.maxChunkSize = maxChunkSize;
+        this.ttl = Duration.ofHours(ttlHours);
+        try {
+            Files.createDirectories(sessionsDir);
+        } catch (IOException e) {
+            logger.error("Ошибка создания каталога '{}'", sessionsDir, e);
+            throw new RuntimeException("Не удалось создать папку для сессий загрузки", e);
+        }
+    }
+
+    public UploadSession createSession(String filename, Integer totalChunks, User owner) {
+        logger.info("Создание сессии загрузки файла '{}' пользователем '{}'", filename, owner.getUsername());
+
+        if (totalChunks != null && totalChunks <= 0) {
+            throw new IllegalArgumentException("Number of chunks must be positive");
+        }
+        // окончательно имя проверит уникальный индекс при завершении, здесь — чтобы не гонять гигабайты впустую
+        if (fileRepository.findByOwnerAndFilename(owner, filename).isPresent()) {
+            logger.warn("Файл '{}' уже существует у пользователя '{}'", filename, owner.getUsername());
+            throw new IllegalArgumentException("File already exists");
+        }
+
+        Instant now = Instant.now();
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setFilename(filename);
+        session.setTotalChunks(totalChunks);
+        session.setOwner(owner);
+        session.setCreatedAt(now);
+        session.setExpiresAt(now.plus(ttl));
+
+        try {
+            Files.createDirectories(sessionsDir.resolve(session.getId()));
+        } catch (IOException e) {
+            logger.error("Ошибка создания каталога сессии '{}'", session.getId(), e);
+            throw new IllegalArgumentException("Ошибка при создании сессии загрузки.", e);
+        }
+        return sessionRepository.save(session);
+    }
+
+    // часть пишется во временный файл и атомарно переименовывается, поэтому в списке
+    // полученных частей никогда не оказывается недописанная часть. Перед переименованием сессия
+    // проверяется ещё раз под блокировкой: часть, принятая во время отмены, в каталог не попадает
+    public void writeChunk(String sessionId, int index, InputStream data, User owner) {
+        UploadSession session = findOwnedSession(sessionId, owner);
+        if (index < 0 || (session.getTotalChunks() != null && index >= session.getTotalChunks())) {
+            throw new IllegalArgumentException("Invalid chunk index: " + index);
+        }
+
+        Path dir = sessionsDir.resolve(session.getId());
+        // части, уже полученные сессией, тоже займут место — учитываем их, чтобы не принимать
+        // гигабайты, которые всё равно будут отклонены при сборке
+        long budget = quotaService.remaining(owner);
+        if (budget != Long.MAX_VALUE) {
+            budget -= receivedBytes(dir, index);
+        }
+        Path tmp = null;
+        try (InputStream in = FileStreams.limit(data, Math.max(0, budget), QuotaService.QUOTA_EXCEEDED)) {
+            tmp = Files.createTempFile(dir, index + "-", ".part");
+            long size = FileStreams.copyToFile(in, tmp, maxChunkSize);
+            ReentrantReadWriteLock sessionLock = lockFor(sessionId);
+            sessionLock.readLock().lock();
+            try {
+                findOwnedSession(sessionId, owner);
+                Files.move(tmp, dir.resolve(index + CHUNK_SUFFIX),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IllegalArgumentException e) {
+                // сессию отменили, пока принималась часть: убираем за собой часть, каталог и блокировку
+                FileStreams.deleteQuietly(tmp);
+                FileStreams.deleteQuietly(dir);
+                locks.remove(sessionId, sessionLock);
+                throw e;
+            } finally {
+                sessionLock.readLock().unlock();
+            }
+            logger.debug("Сессия '{}': получена часть {} ({} bytes)", sessionId, index, size);
+        } catch (IOException e) {
+            logger.error("Ошибка при записи части {} сессии '{}'", index, sessionId, e);
+            throw new IllegalArgumentException("Ошибка при загрузке части файла.", e);
+        } finally {
+            if (tmp != null) {
+                FileStreams.deleteQuietly(tmp);
+            }
+        }
+    }
+
+    public UploadSession getSession(String sessionId, User owner) {
+        return findOwnedSession(sessionId, owner);
+    }
+
+    public List<Integer> getReceivedChunks(String sessionId, User owner) {
+        UploadSession session = findOwnedSession(sessionId, owner);
+        return receivedChunks(sessionsDir.resolve(session.getId()));
+    }
+
+    // сборка частей в итоговый файл идёт через обычную потоковую загрузку, поэтому
+    // FileEntity создаётся в той же транзакции, что и удаление сессии
+    @Transactional
+    public void complete(String sessionId, User owner) {
+        Lock lock = lockFor(sessionId).writeLock();
+        lock.lock();
+        try {
+            assemble(findOwnedSession(sessionId, owner), owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void assemble(UploadSession session, User owner) {
+        String sessionId = session.getId();
+        Path dir = sessionsDir.resolve(session.getId());
+        List<Integer> received = receivedChunks(dir);
+
+        int expected = session.getTotalChunks() != null ? session.getTotalChunks() : received.size();
+        if (expected == 0 || received.size() != expected || received.get(expected - 1) != expected - 1) {
+            logger.warn("Сессия '{}': получено {} частей из {}", sessionId, received.size(), expected);
+            throw new IllegalArgumentException("Not all chunks have been received");
+        }
+
+        fileService.uploadFile(session.getFilename(), new SequenceInputStream(chunkStreams(dir, expected)), owner);
+        sessionRepository.delete(session);
+        Transactions.afterCommit(() -> {
+            deleteDirectory(dir);
+            locks.remove(sessionId);
+        });
+        logger.info("Сессия '{}' завершена: файл '{}' собран из {} частей", sessionId, session.getFilename(), expected);
+    }
+
+    public void abort(String sessionId, User owner) {
+        Lock lock = lockFor(sessionId).writeLock();
+        lock.lock();
+        try {
+            UploadSession session = findOwnedSession(sessionId, owner);
+            sessionRepository.delete(session);
+            deleteDirectory(sessionsDir.resolve(session.getId()));
+        } finally {
+            lock.unlock();
+        }
+        locks.remove(sessionId);
+        logger.info("Сессия '{}' отменена", sessionId);
+    }
+
+    @Scheduled(initialDelayString = "${app.upload-session.cleanup-interval-ms:3600000}",
+            fixedDelayString = "${app.upload-session.cleanup-interval-ms:3600000}")
+    public void cleanupExpired() {
+        List<UploadSession> expired = sessionRepository.findAllByExpiresAtBefore(Instant.now());
+        for (UploadSession session : expired) {
+            Lock lock = lockFor(session.getId()).writeLock();
+            lock.lock();
+            try {
+                sessionRepository.delete(session);
+                deleteDirectory(sessionsDir.resolve(session.getId()));
+            } finally {
+                lock.unlock();
+            }
+            locks.remove(session.getId());
+        }
+        if (!expired.isEmpty()) {
+            logger.info("Удалено {} просроченных сессий загрузки", expired.size());
+        }
+    }
+
+    private ReentrantReadWriteLock lockFor(String sessionId) {
+        return locks.computeIfAbsent(sessionId, id -> new ReentrantReadWriteLock());
+    }
+
+    private UploadSession findOwnedSession(String sessionId, User owner) {
+        return sessionRepository.findById(sessionId)
+                .filter(s -> s.getOwner().getId().equals(owner.getId()))
+                .filter(s -> s.getExpiresAt().isAfter(Instant.now()))
+                .orElseThrow(() -> {
+                    logger.warn("Сессия загрузки '{}' не найдена у пользователя '{}'", sessionId, owner.getUsername());
+                    return new IllegalArgumentException("Upload session not found");
+                });
+    }
+
+    private static List<Integer> receivedChunks(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(CHUNK_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - CHUNK_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Ошибка чтения частей файла.", e);
+        }
+    }
+
+    // размер уже полученных частей, кроме перезаписываемой
+    private static long receivedBytes(Path dir, int exceptIndex) {
+        long total = 0;
+        for (int index : receivedChunks(dir)) {
+            if (index != exceptIndex) {
+                try {
+                    total += Files.size(dir.resolve(index + CHUNK_SUFFIX));
+                } catch (IOException e) {
+                    logger.warn("Не удалось определить размер части {} в '{}'", index, dir);
+                }
+            }
+        }
+        return total;
+    }
+
+    // части открываются по одной по мере чтения, а не все сразу
+    private static Enumeration<InputStream> chunkStreams(Path dir, int count) {
+        return new Enumeration<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < count;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(dir.resolve(next++ + CHUNK_SUFFIX));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static void deleteDirectory(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(FileStreams::deleteQuietly);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            logger.error("Ошибка при удалении каталога '{}'", dir, e);
+        }
+        FileStreams.deleteQuietly(dir);
+    }
+}
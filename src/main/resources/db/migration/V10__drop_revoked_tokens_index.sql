@@ -0,0 +1,3 @@
+-- очистка токенов удаляет только истёкшие строки по ix_tokens_expires_at, отозванные остаются до истечения.
+-- Частичный индекс ix_tokens_revoked не использует ни очистка, ни фильтр отозванных, а обновляется при каждом выходе
+DROP INDEX IF EXISTS ix_tokens_revoked;
@@ -0,0 +1,33 @@
+-- исходная схема, которую раньше создавали db/init.sql и ddl-auto=update;
+-- IF NOT EXISTS позволяет применить миграцию к уже существующей базе
+CREATE TABLE IF NOT EXISTS users (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    password VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS tokens (
+    id BIGSERIAL PRIMARY KEY,
+    token VARCHAR(255) NOT NULL UNIQUE,
+    user_id BIGINT NOT NULL REFERENCES users (id),
+    expires_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    revoked BOOLEAN NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    storage_path VARCHAR(255) NOT NULL,
+    ref_count BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS files (
+    id BIGSERIAL PRIMARY KEY,
+    filename VARCHAR(255) NOT NULL,
+    storage_path VARCHAR(255) NOT NULL,
+    size BIGINT NOT NULL,
+    blob_hash VARCHAR(64),
+    owner_id BIGINT NOT NULL REFERENCES users (id)
+);
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS blob_hash VARCHAR(64);
@@ -0,0 +1,9 @@
+-- db/init.sql создавал users.id как SERIAL, а сущность ожидает BIGINT
+ALTER TABLE users ALTER COLUMN id TYPE BIGINT;
+
+-- поиск файла по (владелец, имя) выполняется при каждой загрузке, скачивании, удалении и переименовании;
+-- уникальность заодно защищает от гонки при загрузке файлов с одинаковым именем
+ALTER TABLE files ADD CONSTRAINT ux_files_owner_filename UNIQUE (owner_id, filename);
+
+-- для очистки просроченных токенов
+CREATE INDEX IF NOT EXISTS ix_tokens_expires_at ON tokens (expires_at);
@@ -0,0 +1 @@
+INSERT INTO users (username, password) VALUES ('artem', '12345') ON CONFLICT (username) DO NOTHING;
@@ -0,0 +1,2 @@
+-- частичный индекс для очистки отозванных токенов: в нём только строки, которые предстоит удалить
+CREATE INDEX IF NOT EXISTS ix_tokens_revoked ON tokens (id) WHERE revoked;
@@ -0,0 +1,7 @@
+-- занятое место ведётся счётчиком в users, а не суммой по files на каждый запрос;
+-- quota_bytes — индивидуальная квота, NULL означает квоту по умолчанию из настроек
+ALTER TABLE users ADD COLUMN IF NOT EXISTS used_bytes BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS quota_bytes BIGINT;
+
+UPDATE users u
+SET used_bytes = COALESCE((SELECT SUM(f.size) FROM files f WHERE f.owner_id = u.id), 0);
@@ -0,0 +1,7 @@
+-- size — логический размер файла (его видит пользователь и считает квота),
+-- stored_size — сколько файл занимает на диске после сжатия кодеком codec
+ALTER TABLE files ADD COLUMN IF NOT EXISTS codec VARCHAR(16) NOT NULL DEFAULT 'none';
+ALTER TABLE files ADD COLUMN IF NOT EXISTS stored_size BIGINT;
+
+UPDATE files SET stored_size = size WHERE stored_size IS NULL;
+ALTER TABLE files ALTER COLUMN stored_size SET NOT NULL;
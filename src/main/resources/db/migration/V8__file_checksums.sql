@@ -0,0 +1,7 @@
+-- контрольные суммы исходного (несжатого) содержимого, считаются при загрузке;
+-- у файлов, загруженных раньше, остаются NULL
+ALTER TABLE files ADD COLUMN IF NOT EXISTS sha256 VARCHAR(64);
+ALTER TABLE files ADD COLUMN IF NOT EXISTS crc32c BIGINT;
+
+-- «есть ли у меня уже такой файл?» перед загрузкой
+CREATE INDEX IF NOT EXISTS ix_files_owner_sha256 ON files (owner_id, sha256) WHERE sha256 IS NOT NULL;
@@ -0,0 +1,2 @@
+-- восстановление по журналу намерений и очистка файлов без строк ищут строку по адресу объекта в хранилище
+CREATE INDEX IF NOT EXISTS ix_files_storage_path ON files (storage_path);
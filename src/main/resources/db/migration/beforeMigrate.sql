@@ -0,0 +1,14 @@
+-- выполняется Flyway перед каждым migrate. В базе, созданной db/init.sql до V2, у владельца могут быть
+-- строки с одинаковым именем, и ограничение ux_files_owner_filename из V2 на ней не создаётся.
+-- Пока ограничения нет, повторы переименовываются: самая ранняя строка сохраняет имя, остальные получают
+-- суффикс " (<id>)". Содержимое и storage_path не меняются. После V2 скрипт ничего не делает
+DO $$
+BEGIN
+    IF to_regclass('files') IS NOT NULL
+            AND NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'ux_files_owner_filename') THEN
+        UPDATE files f
+        SET filename = left(f.filename, 255 - length(' (' || f.id || ')')) || ' (' || f.id || ')'
+        FROM (SELECT id, row_number() OVER (PARTITION BY owner_id, filename ORDER BY id) AS n FROM files) d
+        WHERE f.id = d.id AND d.n > 1;
+    END IF;
+END $$;
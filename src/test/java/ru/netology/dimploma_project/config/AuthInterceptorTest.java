@@ -0,0 +1,67 @@
+package ru.netology.dimploma_project.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
+import ru.netology.dimploma_project.service.AuthService;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AuthInterceptorTest {
+    private final AuthService authService = mock(AuthService.class);
+    private final AuthInterceptor interceptor = new AuthInterceptor(authService);
+
+    @SuppressWarnings("unused")
+    static class Handlers {
+        public void secured(AuthPrincipal principal) {
+        }
+
+        public void open(String tokenValue) {
+        }
+    }
+
+    @Test
+    void preHandle_resolvesPrincipalOnceAndStoresItInRequest() throws Exception {
+        when(authService.authenticate("Bearer abc")).thenReturn(Optional.of(new AuthPrincipal(7L, "artem")));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/list");
+        request.addHeader(AuthInterceptor.TOKEN_HEADER, "Bearer abc");
+
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), handler("secured")));
+
+        assertEquals(new AuthPrincipal(7L, "artem"), request.getAttribute(AuthInterceptor.PRINCIPAL_ATTRIBUTE));
+        verify(authService, times(1)).authenticate(any());
+    }
+
+    @Test
+    void preHandle_rejectsWithPrebuiltBodyAndSkipsOpenHandlers() throws Exception {
+        when(authService.authenticate(any())).thenReturn(Optional.empty());
+
+        MockHttpServletResponse missing = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/list"), missing, handler("secured")));
+        assertEquals(401, missing.getStatus());
+        assertEquals("{\"message\":\"Missing auth-token header\",\"id\":401}", missing.getContentAsString());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/list");
+        request.addHeader(AuthInterceptor.TOKEN_HEADER, "stale");
+        MockHttpServletResponse invalid = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request, invalid, handler("secured")));
+        assertEquals(401, invalid.getStatus());
+        assertEquals("application/json", invalid.getContentType());
+        assertEquals("{\"message\":\"Invalid or expired token\",\"id\":401}", invalid.getContentAsString());
+
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest("POST", "/logout"),
+                new MockHttpServletResponse(), handler("open")));
+        verify(authService, times(1)).authenticate(any());
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+        Class<?> parameter = name.equals("secured") ? AuthPrincipal.class : String.class;
+        return new HandlerMethod(new Handlers(), Handlers.class.getMethod(name, parameter));
+    }
+}
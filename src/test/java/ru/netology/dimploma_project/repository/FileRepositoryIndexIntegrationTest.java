@@ -0,0 +1,101 @@
+package ru.netology.dimploma_project.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.netology.dimploma_project.model.User;
+
+import java.util.List;
+import java.util.Random;
+
+// сравнение времени поиска файла по (владелец, имя) на таблице из миллиона строк без индекса и с индексом
+@SpringBootTest
+@Testcontainers
+public class FileRepositoryIndexIntegrationTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres =
+            new PostgreSQLContainer<>("postgres:15")
+                    .withDatabaseName("testdb")
+                    .withUsername("postgres")
+                    .withPassword("admin");
+
+    private static final int USERS = 100;
+    private static final int FILES_PER_USER = 10_000;
+    private static final int LOOKUPS = 200;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Test
+    void ownerFilenameLookup_usesUniqueIndex() {
+        jdbcTemplate.update("INSERT INTO users (username, password) " +
+                "SELECT 'bench-' || u, 'pwd' FROM generate_series(1, ?) u", USERS);
+        jdbcTemplate.update("INSERT INTO files (filename, storage_path, size, owner_id) " +
+                "SELECT 'file-' || f, 'uploads/bench-' || u.id || '/file-' || f, f, u.id " +
+                "FROM users u CROSS JOIN generate_series(1, ?) f WHERE u.username LIKE 'bench-%'", FILES_PER_USER);
+        jdbcTemplate.execute("ANALYZE files");
+
+        List<User> owners = userRepository.findAll().stream()
+                .filter(u -> u.getUsername().startsWith("bench-"))
+                .toList();
+
+        jdbcTemplate.execute("ALTER TABLE files DROP CONSTRAINT ux_files_owner_filename");
+        String planWithout = explainLookup(owners.get(0).getId());
+        double withoutIndex = measureLookups(owners);
+
+        jdbcTemplate.execute("ALTER TABLE files ADD CONSTRAINT ux_files_owner_filename UNIQUE (owner_id, filename)");
+        jdbcTemplate.execute("ANALYZE files");
+        String planWith = explainLookup(owners.get(0).getId());
+        double withIndex = measureLookups(owners);
+
+        Assertions.assertFalse(planWithout.contains("ux_files_owner_filename"), "Plan without index: " + planWithout);
+        Assertions.assertTrue(planWith.contains("ux_files_owner_filename"),
+                "Lookup should use the unique index: " + planWith);
+        Assertions.assertTrue(withIndex < withoutIndex, String.format(
+                "Indexed lookup should be faster than a sequential scan on %d rows: %.3f ms vs %.3f ms",
+                USERS * FILES_PER_USER, withIndex, withoutIndex));
+    }
+
+    private double measureLookups(List<User> owners) {
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS / 10; i++) {
+            lookup(owners, random);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookup(owners, random);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / LOOKUPS;
+    }
+
+    private void lookup(List<User> owners, Random random) {
+        User owner = owners.get(random.nextInt(owners.size()));
+        String filename = "file-" + (1 + random.nextInt(FILES_PER_USER));
+        Assertions.assertTrue(fileRepository.findByOwnerAndFilename(owner, filename).isPresent());
+    }
+
+    private String explainLookup(long ownerId) {
+        return String.join(" | ", jdbcTemplate.queryForList(
+                "EXPLAIN SELECT * FROM files WHERE owner_id = ? AND filename = ?", String.class, ownerId, "file-1"));
+    }
+}
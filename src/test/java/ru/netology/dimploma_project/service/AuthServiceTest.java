@@ -1,18 +1,28 @@
 package ru.netology.dimploma_project.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import ru.netology.dimploma_project.dto.AuthPrincipal;
 import ru.netology.dimploma_project.model.Token;
 import ru.netology.dimploma_project.model.User;
 import ru.netology.dimploma_project.repository.TokenRepository;
 import ru.netology.dimploma_project.repository.UserRepository;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class AuthServiceTest {
@@ -20,11 +30,20 @@ public class AuthServiceTest {
     private UserRepository userRepository;
     private AuthService authService;
 
+    private static final String KEY_1 = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final String KEY_2 = Base64.getEncoder().encodeToString("второй ключ подписи токенов, 32+".getBytes(StandardCharsets.UTF_8));
+
     @BeforeEach
     void setUp() {
         tokenRepository = mock(TokenRepository.class);
         userRepository = mock(UserRepository.class);
-        authService = new AuthService(tokenRepository, userRepository);
+        authService = authService(new TokenSigner("", ""));
+    }
+
+    private AuthService authService(TokenSigner tokenSigner) {
+        return new AuthService(tokenRepository, userRepository, new TokenCache(100, 300),
+                new OperationMetrics(new SimpleMeterRegistry()), tokenSigner, new RevokedTokens(tokenRepository, tokenSigner),
+                new PasswordHasher(1000, 1, 8), new UnknownUserCache(100, 60));
     }
 
     @Test
@@ -72,6 +91,66 @@ public class AuthServiceTest {
                 () -> authService.login("artem", "wrongPassword"));
     }
 
+    @Test
+    void login_malformedStoredHash_rejectedAsWrongPassword() {
+        PasswordHasher hasher = new PasswordHasher(1000, 1, 8);
+        String valid = hasher.hash("12345");
+        String[] parts = valid.substring(PasswordHasher.PREFIX.length()).split("\\$");
+        List<String> malformed = List.of(
+                PasswordHasher.PREFIX + "many$" + parts[1] + "$" + parts[2],
+                PasswordHasher.PREFIX + "1000$not base64!$" + parts[2],
+                PasswordHasher.PREFIX + "1000$" + parts[1] + "$%%%",
+                PasswordHasher.PREFIX + "0$" + parts[1] + "$" + parts[2],
+                PasswordHasher.PREFIX + "1000$$" + parts[2]);
+        for (String stored : malformed) {
+            assertFalse(hasher.matches("12345", stored), stored);
+        }
+        assertTrue(hasher.matches("12345", valid));
+        hasher.destroy();
+
+        User user = new User();
+        user.setUsername("artem");
+        user.setPassword(malformed.get(0));
+        when(userRepository.findByUsername("artem")).thenReturn(Optional.of(user));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> authService.login("artem", "12345"));
+        assertEquals("Wrong password.", e.getMessage());
+    }
+
+    @Test
+    void login_plaintextPassword_rehashedAndVerifiedByHash() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("artem");
+        user.setPassword("12345");
+
+        when(userRepository.findByUsername("artem")).thenReturn(Optional.of(user));
+        when(userRepository.updatePassword(eq(1L), eq("12345"), anyString())).thenReturn(1);
+        when(tokenRepository.save(any(Token.class))).thenAnswer(invocationOnMock -> invocationOnMock.getArgument(0));
+
+        authService.login("artem", "12345");
+
+        String hash = user.getPassword();
+        assertTrue(hash.startsWith("pbkdf2-sha256$1000$"), "Plaintext password should be replaced by a hash");
+        verify(userRepository).updatePassword(1L, "12345", hash);
+
+        // со старой строкой хэша вход идёт по хэшу, повторного перехэширования нет
+        authService.login("artem", "12345");
+        assertThrows(IllegalArgumentException.class, () -> authService.login("artem", "wrongPassword"));
+        assertEquals(hash, user.getPassword());
+        verify(userRepository, times(1)).updatePassword(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    void login_unknownUsername_cachedWithoutSecondLookup() {
+        when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> authService.login("ghost", "pwd"));
+        assertThrows(IllegalArgumentException.class, () -> authService.login("ghost", "pwd"));
+
+        verify(userRepository, times(1)).findByUsername("ghost");
+    }
+
     @Test
     void logout_setsTokenRevoked() {
         Token token = new Token();
@@ -91,6 +170,7 @@ public class AuthServiceTest {
     @Test
     void findUserByToken_filtersRevokedAndExpired() {
         User user = new User();
+        user.setId(1L);
         user.setUsername("artem");
 
         Token valid = new Token();
@@ -119,4 +199,168 @@ public class AuthServiceTest {
         assertFalse(authService.findUserByToken("revoked").isPresent());
         assertFalse(authService.findUserByToken("expired").isPresent());
     }
+
+    @Test
+    void findUserByToken_cachesUntilLogout() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("artem");
+
+        Token token = new Token();
+        token.setToken("cached");
+        token.setUser(user);
+        token.setRevoked(false);
+        token.setExpiresAt(Instant.now().plus(1, ChronoUnit.DAYS));
+
+        when(tokenRepository.findByToken("cached")).thenReturn(Optional.of(token));
+        when(tokenRepository.save(any())).thenAnswer(invocationOnMock -> invocationOnMock.getArgument(0));
+
+        assertEquals(Optional.of(user), authService.findUserByToken("cached"));
+        assertEquals(Optional.of(user), authService.findUserByToken("Bearer cached"));
+        verify(tokenRepository, times(1)).findByToken("cached");
+
+        authService.logout("cached");
+        assertFalse(authService.findUserByToken("cached").isPresent(), "Revoked token should not be served from cache");
+    }
+
+    @Test
+    void tokenCache_respectsExpiryAndSize() {
+        TokenCache cache = new TokenCache(2, 300);
+        AuthPrincipal user = new AuthPrincipal(1L, "artem");
+
+        cache.put("expired", user, Instant.now().minusSeconds(1));
+        assertFalse(cache.get("expired").isPresent(), "Expired token should not be cached");
+
+        cache.put("a", user, Instant.now().plus(1, ChronoUnit.DAYS));
+        cache.put("b", user, Instant.now().plus(1, ChronoUnit.DAYS));
+        cache.put("c", user, Instant.now().plus(1, ChronoUnit.DAYS));
+        assertEquals(2, cache.size(), "Cache should stay within max size");
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.get("c").isPresent());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // вытесняется давно не читанная запись, а не последняя вставленная
+        cache.put("d", user, Instant.now().plus(1, ChronoUnit.DAYS));
+        assertTrue(cache.get("c").isPresent());
+        assertTrue(cache.get("d").isPresent());
+        cache.get("c");
+        cache.put("e", user, Instant.now().plus(1, ChronoUnit.DAYS));
+        assertFalse(cache.get("d").isPresent());
+        assertEquals(Optional.of(user), cache.get("c"));
+        assertEquals(3, cache.getEvictions());
+    }
+
+    @Test
+    void signedToken_validatedWithoutRepository() {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("artem");
+        user.setPassword("12345");
+        when(userRepository.findByUsername("artem")).thenReturn(Optional.of(user));
+        when(tokenRepository.save(any(Token.class))).thenAnswer(invocationOnMock -> invocationOnMock.getArgument(0));
+
+        authService = authService(new TokenSigner("k1:" + KEY_1, "k1"));
+        String token = authService.login("artem", "12345").getToken();
+        assertTrue(TokenSigner.isSigned(token));
+        assertTrue(token.length() <= 255);
+
+        User found = authService.findUserByToken("Bearer " + token).orElseThrow();
+        assertEquals(7L, found.getId());
+        assertEquals("artem", found.getUsername());
+        verify(tokenRepository, never()).findByToken(any());
+    }
+
+    @Test
+    void signedToken_rejectsTamperedExpiredAndUnknownKey() {
+        TokenSigner signer = new TokenSigner("k1:" + KEY_1, "k1");
+        authService = authService(signer);
+        String token = signer.sign(7L, "artem", Instant.now().plus(1, ChronoUnit.DAYS));
+
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + new TokenSigner("k1:" + KEY_2, "k1")
+                .sign(1L, "admin", Instant.now().plus(1, ChronoUnit.DAYS)).split("\\.")[1] + "." + parts[2];
+        assertFalse(authService.findUserByToken(forged).isPresent(), "Payload swap must break the signature");
+        assertFalse(authService.findUserByToken(token.substring(0, token.length() - 2) + "AA").isPresent());
+        assertFalse(authService.findUserByToken(signer.sign(7L, "artem", Instant.now().minusSeconds(1))).isPresent());
+        assertFalse(authService.findUserByToken("k9." + parts[1] + "." + parts[2]).isPresent());
+        verify(tokenRepository, never()).findByToken(any());
+    }
+
+    @Test
+    void signedToken_oldKeyAcceptedAfterRotation() {
+        String oldToken = new TokenSigner("k1:" + KEY_1, "k1").sign(7L, "artem", Instant.now().plus(1, ChronoUnit.DAYS));
+
+        TokenSigner rotated = new TokenSigner("k1:" + KEY_1 + ",k2:" + KEY_2, "k2");
+        authService = authService(rotated);
+        assertTrue(rotated.sign(7L, "artem", Instant.now().plus(1, ChronoUnit.DAYS)).startsWith("k2."));
+        assertTrue(authService.findUserByToken(oldToken).isPresent(), "Token signed with a retiring key stays valid");
+
+        authService = authService(new TokenSigner("k2:" + KEY_2, "k2"));
+        assertFalse(authService.findUserByToken(oldToken).isPresent(), "Removed key no longer validates");
+    }
+
+    @Test
+    void signedToken_revokedByLogoutAndByRefreshFromDatabase() {
+        TokenSigner signer = new TokenSigner("k1:" + KEY_1, "k1");
+        authService = authService(signer);
+        String token = signer.sign(7L, "artem", Instant.now().plus(1, ChronoUnit.DAYS));
+
+        Token row = new Token();
+        row.setToken(token);
+        row.setRevoked(false);
+        when(tokenRepository.findByToken(token)).thenReturn(Optional.of(row));
+        when(tokenRepository.save(any())).thenAnswer(invocationOnMock -> invocationOnMock.getArgument(0));
+
+        authService.logout("Bearer " + token);
+        assertTrue(row.isRevoked());
+        assertFalse(authService.findUserByToken(token).isPresent(), "Logout is visible on this node immediately");
+
+        // другой узел узнаёт об отзыве при обновлении фильтра из БД
+        RevokedTokens otherNode = new RevokedTokens(tokenRepository, signer);
+        AuthService other = new AuthService(tokenRepository, userRepository, new TokenCache(100, 300),
+                new OperationMetrics(new SimpleMeterRegistry()), signer, otherNode,
+                new PasswordHasher(1000, 1, 8), new UnknownUserCache(100, 60));
+        when(tokenRepository.findRevokedTokens(any())).thenReturn(List.of(token));
+        otherNode.refresh();
+        assertEquals(1, otherNode.size());
+        assertFalse(other.findUserByToken(token).isPresent());
+    }
+
+    @Test
+    void signedToken_staysRevokedAfterReaperAndRefresh() {
+        TokenSigner signer = new TokenSigner("k1:" + KEY_1, "k1");
+        String token = signer.sign(7L, "artem", Instant.now().plus(1, ChronoUnit.DAYS));
+        Token row = new Token();
+        row.setToken(token);
+        row.setExpiresAt(Instant.now().plus(1, ChronoUnit.DAYS));
+        Token expired = new Token();
+        expired.setToken("expired");
+        expired.setExpiresAt(Instant.now().minus(1, ChronoUnit.HOURS));
+        // таблица tokens в памяти: запросы репозитория повторяют условия своих SQL
+        List<Token> rows = new ArrayList<>(List.of(row, expired));
+        when(tokenRepository.findByToken(anyString())).thenAnswer(i -> rows.stream()
+                .filter(t -> t.getToken().equals(i.getArgument(0))).findFirst());
+        when(tokenRepository.save(any())).thenAnswer(i -> i.getArgument(0));
+        when(tokenRepository.findRevokedTokens(any())).thenAnswer(i -> rows.stream()
+                .filter(t -> t.isRevoked() && t.getExpiresAt().isAfter(i.getArgument(0)))
+                .map(Token::getToken).toList());
+        when(tokenRepository.deleteExpiredBatch(any(), anyInt())).thenAnswer(i -> {
+            int before = rows.size();
+            rows.removeIf(t -> t.getExpiresAt().isBefore(i.getArgument(0)));
+            return before - rows.size();
+        });
+
+        authService(signer).logout("Bearer " + token);
+        assertEquals(1, new TokenReaper(tokenRepository, 100).reap(), "Only the expired row is reaped");
+
+        // узел, который не видел выхода, строит фильтр из БД уже после очистки
+        RevokedTokens otherNode = new RevokedTokens(tokenRepository, signer);
+        otherNode.refresh();
+        AuthService other = new AuthService(tokenRepository, userRepository, new TokenCache(100, 300),
+                new OperationMetrics(new SimpleMeterRegistry()), signer, otherNode,
+                new PasswordHasher(1000, 1, 8), new UnknownUserCache(100, 60));
+        assertEquals(1, otherNode.size());
+        assertFalse(other.findUserByToken(token).isPresent(), "Logged-out token stays rejected until it expires");
+    }
 }
@@ -0,0 +1,137 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.netology.dimploma_project.model.Blob;
+import ru.netology.dimploma_project.repository.BlobRepository;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class BlobStoreTest {
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void store_rolledBack_leavesNoObjectOrTemporaryFile() throws IOException {
+        BlobRepository blobRepository = mock(BlobRepository.class);
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        BlobStore blobStore = new BlobStore(blobRepository, new LocalStorageBackend(tempDir.toString()), journal,
+                tempDir.toString());
+        when(blobRepository.acquire(anyString(), anyLong(), anyString())).thenReturn(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        Blob blob = blobStore.store(new ByteArrayInputStream("content".getBytes()));
+        assertFalse(Files.exists(Path.of(blob.getStoragePath())), "Object appears only after commit");
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertFalse(Files.exists(Path.of(blob.getStoragePath())));
+        assertEquals(0, count(tempDir.resolve(".blobs").resolve("tmp")));
+        assertEquals(0, journal.pendingCount());
+
+        TransactionSynchronizationManager.initSynchronization();
+        blobStore.store(new ByteArrayInputStream("content".getBytes()));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals("content", Files.readString(Path.of(blob.getStoragePath())));
+    }
+
+    @Test
+    void release_deletesObjectOnlyAfterCommit() throws IOException {
+        BlobRepository blobRepository = mock(BlobRepository.class);
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        BlobStore blobStore = new BlobStore(blobRepository, new LocalStorageBackend(tempDir.toString()), journal,
+                tempDir.toString());
+        when(blobRepository.acquire(anyString(), anyLong(), anyString())).thenReturn(1L);
+        Blob blob = blobStore.store(new ByteArrayInputStream("content".getBytes()));
+        Path object = Path.of(blob.getStoragePath());
+        when(blobRepository.deleteIfUnreferenced(blob.getHash())).thenReturn(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        blobStore.release(blob.getHash());
+        assertTrue(Files.exists(object), "Content survives until the transaction commits");
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertTrue(Files.exists(object), "Rolled back release keeps the content");
+
+        // между коммитом удаления и его выполнением тот же blob загружен заново
+        TransactionSynchronizationManager.initSynchronization();
+        blobStore.release(blob.getHash());
+        when(blobRepository.existsById(blob.getHash())).thenReturn(true);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertTrue(Files.exists(object));
+
+        TransactionSynchronizationManager.initSynchronization();
+        blobStore.release(blob.getHash());
+        when(blobRepository.existsById(blob.getHash())).thenReturn(false);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertFalse(Files.exists(object));
+        assertEquals(0, journal.pendingCount());
+    }
+
+    @Test
+    void recover_finishesBlobOperationsInterruptedAfterCommit() throws IOException {
+        BlobRepository blobRepository = mock(BlobRepository.class);
+        FileRepository fileRepository = mock(FileRepository.class);
+        LocalStorageBackend storage = new LocalStorageBackend(tempDir.toString());
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        BlobStore blobStore = new BlobStore(blobRepository, storage, journal, tempDir.toString());
+        when(blobRepository.acquire(anyString(), anyLong(), anyString())).thenReturn(1L);
+        Blob deleted = blobStore.store(new ByteArrayInputStream("deleted".getBytes()));
+        when(blobRepository.deleteIfUnreferenced(deleted.getHash())).thenReturn(1);
+
+        // процесс остановлен после коммитов, но до действий с хранилищем
+        TransactionSynchronizationManager.initSynchronization();
+        Blob kept = blobStore.store(new ByteArrayInputStream("kept".getBytes()));
+        Blob lost = blobStore.store(new ByteArrayInputStream("lost".getBytes()));
+        blobStore.release(deleted.getHash());
+        TransactionSynchronizationManager.clearSynchronization();
+        journal.destroy();
+
+        // на kept ссылается закоммиченная строка files, загрузка lost откатилась
+        when(fileRepository.existsByStoragePath(anyString())).thenAnswer(i -> kept.getStoragePath().equals(i.getArgument(0)));
+        IntentJournal reopened = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        assertEquals(3, new IntentRecovery(reopened, fileRepository, storage).recover());
+
+        assertEquals("kept", Files.readString(Path.of(kept.getStoragePath())));
+        assertFalse(Files.exists(Path.of(lost.getStoragePath())));
+        assertFalse(Files.exists(Path.of(deleted.getStoragePath())));
+        assertEquals(0, count(tempDir.resolve(".blobs").resolve("tmp")));
+        assertEquals(0, reopened.pendingCount());
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
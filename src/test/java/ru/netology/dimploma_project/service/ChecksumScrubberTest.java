@@ -0,0 +1,98 @@
+package ru.netology.dimploma_project.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ChecksumScrubberTest {
+    private FileRepository fileRepository;
+    private LocalStorageBackend storage;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        fileRepository = mock(FileRepository.class);
+        storage = new LocalStorageBackend(tempDir.toString());
+    }
+
+    @Test
+    void scrub_detectsCorruptedAndMissingFiles() throws Exception {
+        FileEntity intact = stored(1L, "intact.log", StorageCodec.LZ4, "log line\n".repeat(1000).getBytes());
+        FileEntity corrupted = stored(2L, "corrupted.bin", StorageCodec.NONE, new byte[4096]);
+        FileEntity missing = stored(3L, "missing.bin", StorageCodec.NONE, new byte[16]);
+        byte[] flipped = Files.readAllBytes(Path.of(corrupted.getStoragePath()));
+        flipped[100] ^= 1;
+        Files.write(Path.of(corrupted.getStoragePath()), flipped);
+        Files.delete(Path.of(missing.getStoragePath()));
+
+        when(fileRepository.findChecksummedAfter(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(intact, corrupted, missing));
+        when(fileRepository.findChecksummedAfter(eq(3L), any(Pageable.class))).thenReturn(List.of());
+
+        ChecksumScrubber scrubber = new ChecksumScrubber(fileRepository, storage,
+                new OperationMetrics(new SimpleMeterRegistry()), 100, 0);
+        assertEquals(3, scrubber.scrub());
+        assertEquals(1, scrubber.getVerified());
+        assertEquals(1, scrubber.getCorrupted());
+        assertEquals(1, scrubber.getMissing());
+
+        // конец прохода: следующий запуск начинает с первого файла
+        assertEquals(0, scrubber.scrub());
+        scrubber.scrub();
+        verify(fileRepository, times(2)).findChecksummedAfter(eq(0L), any(Pageable.class));
+    }
+
+    @Test
+    void scrub_isThrottledToConfiguredRate() throws Exception {
+        byte[] data = new byte[512 * 1024];
+        new Random(3).nextBytes(data);
+        FileEntity file = stored(1L, "large.bin", StorageCodec.NONE, data);
+        when(fileRepository.findChecksummedAfter(anyLong(), any(Pageable.class))).thenReturn(List.of(file));
+
+        ChecksumScrubber scrubber = new ChecksumScrubber(fileRepository, storage,
+                new OperationMetrics(new SimpleMeterRegistry()), 100, 2 * 1024 * 1024);
+        long start = System.nanoTime();
+        scrubber.scrub();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(1, scrubber.getVerified());
+        assertEquals(data.length, scrubber.getBytesRead());
+        assertTrue(elapsedMs >= 200, "512 KB at 2 MB/s should take about 250 ms, took " + elapsedMs);
+    }
+
+    // файл пишется так же, как при загрузке: суммы по исходным байтам, на диске — после кодека
+    private FileEntity stored(long id, String name, StorageCodec codec, byte[] content) throws Exception {
+        Path staged = Files.createTempFile(tempDir, "staged-", ".part");
+        ChecksumInputStream in = new ChecksumInputStream(new ByteArrayInputStream(content), true);
+        FileStreams.copyToFile(in, staged, codec);
+        String location = storage.put("artem/" + name, staged);
+
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(id);
+        fileEntity.setFilename(name);
+        fileEntity.setSize((long) content.length);
+        fileEntity.setCodec(codec.id());
+        fileEntity.setStoragePath(location);
+        fileEntity.setSha256(in.sha256Hex());
+        fileEntity.setCrc32c(in.crc32c());
+        return fileEntity;
+    }
+}
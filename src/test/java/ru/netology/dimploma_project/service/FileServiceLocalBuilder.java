@@ -0,0 +1,83 @@
+package ru.netology.dimploma_project.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ru.netology.dimploma_project.repository.BlobRepository;
+import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.UserRepository;
+
+// сборка FileServiceLocal для тестов и бенчмарков: по умолчанию локальное хранилище в storageDir,
+// без сжатия, кэша чтения, дедупликации и mmap, раскладка flat. Новая зависимость сервиса
+// добавляется здесь, а не в каждую фикстуру
+public class FileServiceLocalBuilder {
+    private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final UserRepository userRepository;
+    private final String storageDir;
+
+    private StorageBackend storage;
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private String compression = "none";
+    private long readCacheBytes;
+    private long readCacheMaxFileSize;
+    private String layout = "flat";
+    private boolean dedup;
+    private long mmapThreshold;
+
+    public FileServiceLocalBuilder(FileRepository fileRepository,
+                                   BlobRepository blobRepository,
+                                   UserRepository userRepository,
+                                   String storageDir) {
+        this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.userRepository = userRepository;
+        this.storageDir = storageDir;
+    }
+
+    public FileServiceLocalBuilder storage(StorageBackend storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    public FileServiceLocalBuilder meterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        return this;
+    }
+
+    public FileServiceLocalBuilder compression(String compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public FileServiceLocalBuilder readCache(long maxBytes, long maxFileSize) {
+        this.readCacheBytes = maxBytes;
+        this.readCacheMaxFileSize = maxFileSize;
+        return this;
+    }
+
+    public FileServiceLocalBuilder layout(String layout) {
+        this.layout = layout;
+        return this;
+    }
+
+    public FileServiceLocalBuilder dedup(boolean dedup) {
+        this.dedup = dedup;
+        return this;
+    }
+
+    public FileServiceLocalBuilder mmapThreshold(long mmapThreshold) {
+        this.mmapThreshold = mmapThreshold;
+        return this;
+    }
+
+    public FileServiceLocal build() {
+        StorageBackend backend = storage != null ? storage : new LocalStorageBackend(storageDir);
+        IntentJournal journal = new IntentJournal(storageDir, 16 * 1024 * 1024);
+        return new FileServiceLocal(fileRepository, backend,
+                new BlobStore(blobRepository, backend, journal, storageDir),
+                new OperationMetrics(meterRegistry), new QuotaService(userRepository, 0),
+                new CompressionPolicy(compression), new ReadCache(readCacheBytes, readCacheMaxFileSize),
+                journal, new StorageLayout(layout),
+                storageDir, dedup, mmapThreshold);
+    }
+}
@@ -1,25 +1,58 @@
 package ru.netology.dimploma_project.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Pageable;
+import ru.netology.dimploma_project.dto.FileDto;
+import ru.netology.dimploma_project.dto.StorageUsageDto;
 import ru.netology.dimploma_project.model.FileEntity;
 import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.BlobRepository;
 import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.UserRepository;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class FileServiceLocalTest {
     private FileRepository fileRepository;
+    private BlobRepository blobRepository;
+    private UserRepository userRepository;
+    private LocalStorageBackend storage;
     private FileServiceLocal fileService;
+    private SimpleMeterRegistry meterRegistry;
 
     @TempDir
     Path tempDir;
@@ -27,7 +60,19 @@ public class FileServiceLocalTest {
     @BeforeEach
     void setUp() {
         fileRepository = mock(FileRepository.class);
-        fileService = new FileServiceLocal(fileRepository, tempDir.toString());
+        blobRepository = mock(BlobRepository.class);
+        userRepository = mock(UserRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        storage = new LocalStorageBackend(tempDir.toString());
+        when(userRepository.findUsage(any())).thenReturn(Optional.of(new StorageUsageDto(0L, null)));
+        when(userRepository.charge(any(), anyLong(), anyLong())).thenReturn(1);
+        fileService = fixture().build();
+    }
+
+    private FileServiceLocalBuilder fixture() {
+        return new FileServiceLocalBuilder(fileRepository, blobRepository, userRepository, tempDir.toString())
+                .storage(storage)
+                .meterRegistry(meterRegistry);
     }
 
     @Test
@@ -99,4 +144,568 @@ public class FileServiceLocalTest {
         assertFalse(Files.exists(oldFilePath), "Old file should no longer exist");
         assertTrue(Files.exists(newFilePath), "New file should exist after rename");
     }
+
+    @Test
+    void shardedLayout_pathFromIdAndRenameWithoutMovingContent() throws Exception {
+        fileService = fixture().layout("sharded").build();
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> {
+            FileEntity saved = i.getArgument(0);
+            if (saved.getId() == null) {
+                saved.setId(42L);
+            }
+            return saved;
+        });
+
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        fileService.uploadFile("a.txt", "sharded".getBytes(), owner);
+        verify(fileRepository).save(saved.capture());
+        FileEntity uploaded = saved.getValue();
+        Path sharded = tempDir.resolve(StorageLayout.shardedKey(42L));
+        assertEquals(sharded.toString(), uploaded.getStoragePath());
+        assertEquals("sharded", Files.readString(sharded));
+        assertEquals(4, tempDir.relativize(sharded).getNameCount(), "objects/<xx>/<yy>/<id>");
+
+        when(fileRepository.findByOwnerAndFilename(owner, "a.txt")).thenReturn(Optional.of(uploaded));
+        fileService.renameFile("a.txt", "b.txt", owner);
+        assertEquals("b.txt", uploaded.getFilename());
+        assertEquals(sharded.toString(), uploaded.getStoragePath(), "Rename only updates metadata");
+        assertTrue(Files.exists(sharded));
+
+        // файл, загруженный до смены раскладки, переименование переносит на адрес по id
+        Path flat = Files.createDirectories(tempDir.resolve("artem")).resolve("old.txt");
+        Files.writeString(flat, "flat");
+        FileEntity legacy = new FileEntity();
+        legacy.setId(7L);
+        legacy.setFilename("old.txt");
+        legacy.setOwner(owner);
+        legacy.setStoragePath(flat.toString());
+        when(fileRepository.findByOwnerAndFilename(owner, "old.txt")).thenReturn(Optional.of(legacy));
+        fileService.renameFile("old.txt", "new.txt", owner);
+        Path moved = tempDir.resolve(StorageLayout.shardedKey(7L));
+        assertEquals(moved.toString(), legacy.getStoragePath());
+        assertFalse(Files.exists(flat));
+        assertEquals("flat", Files.readString(moved));
+    }
+
+    @Test
+    void downloadFileAsResource_streamsFromDisk() throws Exception {
+        User owner = new User();
+        owner.setUsername("artem");
+
+        Path userDir = tempDir.resolve(owner.getUsername());
+        Files.createDirectories(userDir);
+        Path filePath = userDir.resolve("a.txt");
+        Files.write(filePath, "Text for tests".getBytes());
+
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setFilename("a.txt");
+        fileEntity.setOwner(owner);
+        fileEntity.setStoragePath(filePath.toString());
+        when(fileRepository.findByOwnerAndFilename(owner, "a.txt")).thenReturn(Optional.of(fileEntity));
+        when(fileRepository.findByOwnerAndFilename(owner, "missing.txt")).thenReturn(Optional.empty());
+
+        Resource resource = fileService.downloadFileAsResource("a.txt", owner);
+        assertEquals(Files.size(filePath), resource.contentLength(), "Resource length should match file size");
+        try (InputStream in = resource.getInputStream()) {
+            assertArrayEquals("Text for tests".getBytes(), in.readAllBytes(), "Resource content should match file");
+        }
+        // Range: пропуск до первого чтения открывает объект сразу с нужного смещения
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(5, in.skip(5));
+            assertArrayEquals("for tests".getBytes(), in.readAllBytes(), "Skipped bytes should not be returned");
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> fileService.downloadFileAsResource("missing.txt", owner));
+    }
+
+    @Test
+    void dedup_storesIdenticalContentOnce() throws Exception {
+        FileServiceLocal dedupService = fixture().dedup(true).build();
+
+        User owner = new User();
+        owner.setUsername("artem");
+        byte[] data = "same content".getBytes();
+
+        when(blobRepository.acquire(anyString(), anyLong(), anyString())).thenReturn(1L, 2L);
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+
+        dedupService.uploadFile("a.txt", data, owner);
+        dedupService.uploadFile("b.txt", data, owner);
+
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        verify(fileRepository, times(2)).save(saved.capture());
+        FileEntity first = saved.getAllValues().get(0);
+        FileEntity second = saved.getAllValues().get(1);
+
+        assertNotNull(first.getBlobHash(), "Deduplicated file should reference a blob");
+        assertEquals(first.getBlobHash(), second.getBlobHash(), "Identical content should share one blob");
+        assertEquals(first.getStoragePath(), second.getStoragePath());
+        assertEquals((long) data.length, second.getSize());
+
+        Path blobPath = Path.of(first.getStoragePath());
+        assertArrayEquals(data, Files.readAllBytes(blobPath), "Blob should contain uploaded bytes");
+        assertFalse(Files.exists(tempDir.resolve("artem")), "No per-user copy should be written");
+        try (var tmp = Files.list(tempDir.resolve(".blobs").resolve("tmp"))) {
+            assertEquals(0, tmp.count(), "Temporary upload files should be cleaned up");
+        }
+
+        when(fileRepository.findByOwnerAndFilename(owner, "a.txt")).thenReturn(Optional.of(first));
+        when(fileRepository.findByOwnerAndFilename(owner, "c.txt")).thenReturn(Optional.empty());
+        dedupService.renameFile("a.txt", "c.txt", owner);
+        assertEquals("c.txt", first.getFilename());
+        assertTrue(Files.exists(blobPath), "Rename should not touch the blob");
+
+        when(fileRepository.findByOwnerAndFilename(owner, "b.txt")).thenReturn(Optional.of(second));
+        when(blobRepository.deleteIfUnreferenced(second.getBlobHash())).thenReturn(0);
+        dedupService.deleteFile("b.txt", owner);
+        verify(blobRepository).release(second.getBlobHash());
+        assertTrue(Files.exists(blobPath), "Blob should stay while it is still referenced");
+
+        when(fileRepository.findByOwnerAndFilename(owner, "c.txt")).thenReturn(Optional.of(first));
+        when(blobRepository.deleteIfUnreferenced(first.getBlobHash())).thenReturn(1);
+        dedupService.deleteFile("c.txt", owner);
+        assertFalse(Files.exists(blobPath), "Blob should be removed with its last reference");
+    }
+
+    @Test
+    void getFilesPage_pushesCursorPrefixAndLimitToRepository() {
+        User owner = new User();
+        owner.setUsername("artem");
+        List<FileDto> page = List.of(new FileDto("report_2.txt", 10L));
+        when(fileRepository.findPage(eq(owner), eq("report_1.txt"), eq("report\\_%"), any(Pageable.class)))
+                .thenReturn(page);
+
+        assertEquals(page, fileService.getFilesPage(owner, "report_1.txt", "report_", 5));
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(fileRepository).findPage(eq(owner), eq("report_1.txt"), eq("report\\_%"), pageable.capture());
+        assertEquals(5, pageable.getValue().getPageSize(), "Limit should be applied by the database");
+
+        fileService.getFilesPage(owner, null, null, 3);
+        verify(fileRepository).findPage(eq(owner), eq(""), eq("%"), any(Pageable.class));
+        verify(fileRepository, never()).findAllByOwner(any());
+    }
+
+    @Test
+    void uploadStream_concurrentLargeUploads_readInBoundedChunks() throws Exception {
+        int uploads = 50;
+        long fileSize = 4L * 1024 * 1024;
+
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+
+        List<SyntheticStream> streams = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                User owner = new User();
+                owner.setUsername("user" + i);
+                SyntheticStream stream = new SyntheticStream(fileSize);
+                streams.add(stream);
+                futures.add(executor.submit(() -> fileService.uploadFile("big.bin", stream, owner)));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < uploads; i++) {
+            Path filePath = tempDir.resolve("user" + i).resolve("big.bin");
+            assertEquals(fileSize, Files.size(filePath), "File on disk should have full size");
+            assertTrue(streams.get(i).maxChunk <= 64 * 1024, "Upload should be read through a bounded buffer");
+            assertTrue(streams.get(i).closed, "Input stream should be closed after upload");
+        }
+
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        verify(fileRepository, times(uploads)).save(saved.capture());
+        saved.getAllValues().forEach(f -> assertEquals(fileSize, f.getSize(), "Size should be counted while streaming"));
+    }
+
+    @Test
+    void operations_recordTimersBytesAndErrors() throws IOException {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        byte[] data = "metrics content".getBytes();
+
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+        fileService.uploadFile("m.txt", data, owner);
+
+        FileEntity entity = new FileEntity();
+        entity.setFilename("m.txt");
+        entity.setStoragePath(tempDir.resolve("artem").resolve("m.txt").toString());
+        when(fileRepository.findByOwnerAndFilename(owner, "m.txt")).thenReturn(Optional.of(entity));
+        when(fileRepository.findByOwnerAndFilename(owner, "missing.txt")).thenReturn(Optional.empty());
+
+        try (InputStream in = fileService.downloadFileAsResource("m.txt", owner).getInputStream()) {
+            in.readAllBytes();
+        }
+        assertThrows(IllegalArgumentException.class, () -> fileService.downloadFile("missing.txt", owner));
+
+        assertEquals(1, meterRegistry.get("storage.operation")
+                .tags("operation", "upload", "outcome", "success", "size", "lt64k").timer().count());
+        assertEquals(data.length, meterRegistry.get("storage.bytes.received").tag("operation", "upload")
+                .counter().count());
+        assertEquals(data.length, meterRegistry.get("storage.bytes.sent").tag("operation", "download")
+                .counter().count(), "Streamed bytes should be counted as they are read");
+        assertEquals(1, meterRegistry.get("storage.errors")
+                .tags("operation", "download", "cause", "IllegalArgumentException").counter().count());
+        assertEquals(0, meterRegistry.get("storage.operations.active").tag("operation", "download")
+                .gauge().value());
+    }
+
+    @Test
+    void upload_overQuota_rejectedBeforeFileIsStored() throws IOException {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        when(userRepository.findUsage(1L)).thenReturn(Optional.of(new StorageUsageDto(90L, 100L)));
+
+        SyntheticStream stream = new SyntheticStream(50L * 1024 * 1024);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> fileService.uploadFile("big.bin", stream, owner));
+
+        assertEquals(QuotaService.QUOTA_EXCEEDED, e.getMessage());
+        assertTrue(stream.remaining > 49L * 1024 * 1024, "Upload should stop right after the quota is exceeded");
+        verify(fileRepository, never()).save(any());
+        verify(userRepository, never()).charge(any(), anyLong(), anyLong());
+        assertFalse(Files.exists(tempDir.resolve("artem").resolve("big.bin")), "No file should be stored");
+        try (var files = Files.list(tempDir.resolve(".staging"))) {
+            assertEquals(0, files.count(), "No temp file should remain");
+        }
+    }
+
+    @Test
+    void uploadAndDelete_updateUsageCounter() {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        byte[] data = "twelve bytes".getBytes();
+
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+        fileService.uploadFile("q.txt", data, owner);
+        verify(userRepository).charge(1L, data.length, Long.MAX_VALUE);
+
+        FileEntity entity = new FileEntity();
+        entity.setFilename("q.txt");
+        entity.setSize((long) data.length);
+        entity.setStoragePath(tempDir.resolve("artem").resolve("q.txt").toString());
+        when(fileRepository.findByOwnerAndFilename(owner, "q.txt")).thenReturn(Optional.of(entity));
+
+        fileService.deleteFile("q.txt", owner);
+        verify(userRepository).release(1L, data.length);
+    }
+
+    @Test
+    void deleteFile_keepsObjectOfFileReuploadedAtSameLocation() {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+        fileService.uploadFile("q.txt", "new content".getBytes(), owner);
+
+        Path stored = tempDir.resolve("artem").resolve("q.txt");
+        FileEntity deleted = entity(10L, "q.txt", 3, owner);
+        deleted.setStoragePath(stored.toString());
+        when(fileRepository.findByOwnerAndFilename(owner, "q.txt")).thenReturn(Optional.of(deleted));
+        // строка загруженного заново файла уже закоммичена и ссылается на тот же адрес
+        when(fileRepository.existsByStoragePath(stored.toString())).thenReturn(true);
+
+        fileService.deleteFile("q.txt", owner);
+
+        assertTrue(Files.exists(stored), "Object of the re-uploaded file should not be deleted");
+    }
+
+    @Test
+    void deleteFiles_singleQueryBatchDeleteAndOneQuotaRelease() throws IOException {
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+        fileService.uploadFile("a.txt", "aaa".getBytes(), owner);
+        fileService.uploadFile("b.txt", "bbbbb".getBytes(), owner);
+
+        List<FileEntity> found = List.of(entity(10L, "a.txt", 3, owner), entity(11L, "b.txt", 5, owner));
+        List<String> names = List.of("a.txt", "b.txt", "missing.txt");
+        when(fileRepository.findAllByOwnerAndFilenameIn(owner, names)).thenReturn(found);
+
+        List<String> deleted = fileService.deleteFiles(names, owner);
+
+        assertEquals(List.of("a.txt", "b.txt"), deleted);
+        verify(fileRepository, times(1)).findAllByOwnerAndFilenameIn(owner, names);
+        verify(fileRepository).deleteAllByIdInBatch(List.of(10L, 11L));
+        verify(fileRepository, never()).findByOwnerAndFilename(any(), anyString());
+        verify(userRepository, times(1)).release(1L, 8L);
+        assertFalse(Files.exists(tempDir.resolve("artem").resolve("a.txt")));
+        assertFalse(Files.exists(tempDir.resolve("artem").resolve("b.txt")));
+    }
+
+    @Test
+    void writeZip_streamsAllFilesIntoArchive() throws IOException {
+        User owner = new User();
+        owner.setUsername("artem");
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+        fileService.uploadFile("a.txt", "first".getBytes(), owner);
+        fileService.uploadFile("b.txt", "second".getBytes(), owner);
+
+        List<FileEntity> files = List.of(entity(1L, "a.txt", 5, owner), entity(2L, "b.txt", 6, owner));
+        when(fileRepository.findAllByOwnerAndFilenameIn(owner, List.of("a.txt", "b.txt"))).thenReturn(files);
+        when(fileRepository.findAllByOwnerAndFilenameIn(owner, List.of("a.txt", "c.txt")))
+                .thenReturn(List.of(files.get(0)));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> fileService.findFiles(List.of("a.txt", "c.txt"), owner));
+        assertTrue(e.getMessage().contains("c.txt"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileService.writeZip(fileService.findFiles(List.of("a.txt", "b.txt"), owner), out);
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes()));
+            }
+        }
+        assertEquals(Map.of("a.txt", "first", "b.txt", "second"), entries);
+        assertEquals(11.0, meterRegistry.get("storage.bytes.sent").tag("operation", OperationMetrics.ZIP)
+                .counter().count());
+    }
+
+    @Test
+    void compression_textIsStoredCompressedAndRandomDataAsIs() throws IOException {
+        fileService = fixture().compression("lz4").build();
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        when(fileRepository.save(saved.capture())).thenAnswer(i -> i.getArgument(0));
+
+        byte[] text = "2026-01-01 INFO request completed in 12 ms\n".repeat(2000).getBytes();
+        byte[] random = new byte[64 * 1024];
+        new Random(1).nextBytes(random);
+        fileService.uploadFile("app.log", text, owner);
+        fileService.uploadFile("photo.jpg", random, owner);
+
+        FileEntity log = saved.getAllValues().get(0);
+        assertEquals("lz4", log.getCodec());
+        assertEquals(text.length, log.getSize());
+        assertTrue(log.getStoredSize() < text.length / 10, "Repetitive text should shrink");
+        assertEquals(log.getStoredSize(), Files.size(tempDir.resolve("artem").resolve("app.log")));
+        verify(userRepository).charge(1L, text.length, Long.MAX_VALUE);
+
+        FileEntity photo = saved.getAllValues().get(1);
+        assertEquals("none", photo.getCodec());
+        assertEquals(random.length, photo.getStoredSize());
+
+        when(fileRepository.findByOwnerAndFilename(owner, "app.log")).thenReturn(Optional.of(log));
+        assertArrayEquals(text, fileService.downloadFile("app.log", owner));
+        Resource resource = fileService.downloadFileAsResource("app.log", owner);
+        assertEquals(text.length, resource.contentLength());
+        try (InputStream in = resource.getInputStream()) {
+            assertArrayEquals(text, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void compressionPolicy_skipsHighEntropyAndTinySamples() {
+        CompressionPolicy policy = new CompressionPolicy("zstd");
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        byte[] text = "hello world, hello storage ".repeat(100).getBytes();
+
+        assertTrue(CompressionPolicy.entropy(random, random.length) > CompressionPolicy.MAX_ENTROPY);
+        assertEquals(StorageCodec.NONE, policy.select(random, random.length));
+        assertEquals(StorageCodec.ZSTD, policy.select(text, text.length));
+        assertEquals(StorageCodec.NONE, policy.select(text, 100));
+        assertEquals(StorageCodec.NONE, new CompressionPolicy("none").select(text, text.length));
+    }
+
+    @Test
+    void readCache_servesRepeatedDownloadsFromMemoryUntilDeleted() throws IOException {
+        fileService = fixture().compression("lz4").readCache(1024 * 1024, 64 * 1024).build();
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        when(fileRepository.save(saved.capture())).thenAnswer(i -> i.getArgument(0));
+
+        byte[] text = "cached line of a popular file\n".repeat(1000).getBytes();
+        fileService.uploadFile("popular.txt", text, owner);
+        FileEntity fileEntity = saved.getValue();
+        fileEntity.setId(42L);
+        when(fileRepository.findByOwnerAndFilename(owner, "popular.txt")).thenReturn(Optional.of(fileEntity));
+
+        assertArrayEquals(text, fileService.downloadFile("popular.txt", owner));
+        // содержимое уже в кэше распакованным: файл в хранилище больше не нужен
+        Files.delete(tempDir.resolve("artem").resolve("popular.txt"));
+        Resource resource = fileService.downloadFileAsResource("popular.txt", owner);
+        assertEquals(text.length, resource.contentLength());
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(100, in.skip(100));
+            assertArrayEquals(Arrays.copyOfRange(text, 100, text.length), in.readAllBytes());
+        }
+        assertArrayEquals(text, fileService.downloadFile("popular.txt", owner));
+
+        fileService.deleteFile("popular.txt", owner);
+        assertThrows(IllegalArgumentException.class, () -> fileService.downloadFile("popular.txt", owner),
+                "Deleted file must not be served from cache");
+    }
+
+    @Test
+    void readCache_admitsFrequentFilesOverOneOffReads() {
+        ReadCache cache = new ReadCache(100_000, 40_000);
+        ReadCache.Key[] hot = {new ReadCache.Key(1, "a"), new ReadCache.Key(2, "b"), new ReadCache.Key(3, "c")};
+        for (ReadCache.Key key : hot) {
+            for (int i = 0; i < 5; i++) {
+                cache.get(key);
+            }
+            cache.put(key, ByteBuffer.allocate(30_000), 0);
+        }
+        assertEquals(3, cache.size());
+
+        ReadCache.Key oneOff = new ReadCache.Key(4, "d");
+        cache.get(oneOff);
+        ReadCache.Entry served = cache.put(oneOff, ByteBuffer.wrap(new byte[30_000]), 0);
+        assertTrue(served.data().isDirect(), "Content is kept off-heap");
+        assertFalse(cache.get(oneOff).isPresent(), "One-off read must not evict popular files");
+        assertEquals(1, cache.getRejections());
+        for (ReadCache.Key key : hot) {
+            assertTrue(cache.get(key).isPresent());
+        }
+
+        ReadCache.Key trending = new ReadCache.Key(5, "e");
+        for (int i = 0; i < 10; i++) {
+            cache.get(trending);
+        }
+        cache.put(trending, ByteBuffer.allocate(30_000), 0);
+        assertTrue(cache.get(trending).isPresent(), "More frequent file replaces a less frequent one");
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.bytes() <= 100_000);
+
+        cache.invalidate(5);
+        assertFalse(cache.get(trending).isPresent());
+        assertFalse(cache.accepts(40_001));
+    }
+
+    @Test
+    void mmap_largeFilesAreServedFromMappedRegions() throws IOException {
+        fileService = fixture().mmapThreshold(64 * 1024).build();
+        User owner = new User();
+        owner.setUsername("artem");
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        when(fileRepository.save(saved.capture())).thenAnswer(i -> i.getArgument(0));
+
+        byte[] large = new byte[300 * 1024];
+        new Random(7).nextBytes(large);
+        fileService.uploadFile("large.bin", large, owner);
+        fileService.uploadFile("small.bin", Arrays.copyOf(large, 1024), owner);
+        when(fileRepository.findByOwnerAndFilename(owner, "large.bin")).thenReturn(Optional.of(saved.getAllValues().get(0)));
+        when(fileRepository.findByOwnerAndFilename(owner, "small.bin")).thenReturn(Optional.of(saved.getAllValues().get(1)));
+
+        Resource resource = fileService.downloadFileAsResource("large.bin", owner);
+        assertTrue(resource.getDescription().startsWith("mapped file"));
+        assertFalse(fileService.downloadFileAsResource("small.bin", owner).getDescription().startsWith("mapped file"));
+        try (InputStream in = resource.getInputStream()) {
+            assertArrayEquals(large, in.readAllBytes());
+        }
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(200_000, in.skip(200_000));
+            assertArrayEquals(Arrays.copyOfRange(large, 200_000, large.length), in.readAllBytes());
+        }
+
+        // чтение через границы окон и переход назад не зависят от размера окна
+        Path path = tempDir.resolve("artem").resolve("large.bin");
+        try (MappedFileInputStream in = new MappedFileInputStream(path, 4096)) {
+            assertEquals(4000, in.skip(4000));
+            byte[] chunk = new byte[10_000];
+            assertEquals(4096, in.read(chunk, 0, chunk.length), "Read stops at the end of the current region");
+            assertArrayEquals(Arrays.copyOfRange(large, 4000, 8096), Arrays.copyOf(chunk, 4096));
+            assertEquals(large[8096] & 0xFF, in.read());
+            assertArrayEquals(Arrays.copyOfRange(large, 8097, large.length), in.readAllBytes());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void checksums_computedWhileUploadingAndReusedForCopy() throws Exception {
+        fileService = fixture().compression("lz4").build();
+        User owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+        ArgumentCaptor<FileEntity> saved = ArgumentCaptor.forClass(FileEntity.class);
+        when(fileRepository.save(saved.capture())).thenAnswer(i -> i.getArgument(0));
+
+        byte[] text = "checksummed content, compressed on disk\n".repeat(500).getBytes();
+        fileService.uploadFile("report.txt", text, owner);
+        FileEntity report = saved.getValue();
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text));
+        CRC32C crc = new CRC32C();
+        crc.update(text);
+        assertEquals("lz4", report.getCodec());
+        assertEquals(sha256, report.getSha256(), "Checksum covers the original bytes, not the compressed ones");
+        assertEquals(crc.getValue(), report.getCrc32c());
+
+        when(fileRepository.findByOwnerAndFilename(owner, "report.txt")).thenReturn(Optional.of(report));
+        ChecksummedResource resource = (ChecksummedResource) fileService.downloadFileAsResource("report.txt", owner);
+        assertEquals(sha256, resource.getSha256());
+
+        when(fileRepository.findFirstByOwnerAndSha256(owner, sha256)).thenReturn(Optional.of(report));
+        assertTrue(fileService.copyByChecksum("copy.txt", sha256.toUpperCase(), owner));
+        FileEntity copy = saved.getValue();
+        assertEquals("copy.txt", copy.getFilename());
+        assertEquals(sha256, copy.getSha256());
+        assertEquals(report.getStoredSize(), Files.size(tempDir.resolve("artem").resolve("copy.txt")));
+        verify(userRepository, times(2)).charge(1L, text.length, Long.MAX_VALUE);
+
+        assertFalse(fileService.copyByChecksum("other.txt", "0".repeat(64), owner));
+    }
+
+    private FileEntity entity(Long id, String filename, long size, User owner) {
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(id);
+        fileEntity.setFilename(filename);
+        fileEntity.setSize(size);
+        fileEntity.setOwner(owner);
+        fileEntity.setStoragePath(tempDir.resolve(owner.getUsername()).resolve(filename).toString());
+        return fileEntity;
+    }
+
+    // поток заданной длины, который не держит данные в памяти и запоминает максимальный запрошенный кусок
+    private static class SyntheticStream extends InputStream {
+        private long remaining;
+        private volatile int maxChunk;
+        private volatile boolean closed;
+
+        SyntheticStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0) return -1;
+            remaining--;
+            return 'x';
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining == 0) return -1;
+            maxChunk = Math.max(maxChunk, len);
+            int n = (int) Math.min(len, remaining);
+            Arrays.fill(b, off, off + n, (byte) 'x');
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
 }
@@ -0,0 +1,197 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class IntentJournalTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void isPendingTarget_ignoresOwnAndFinishedIntents() throws IOException {
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        long delete = journal.begin(IntentJournal.Intent.delete(1L, "uploads/artem/a.txt"));
+        assertFalse(journal.isPendingTarget("uploads/artem/a.txt", delete));
+
+        long put = journal.begin(IntentJournal.Intent.put(2L, tempDir.resolve("upload-1.part"),
+                "uploads/artem/a.txt", "artem/a.txt"));
+        assertTrue(journal.isPendingTarget("uploads/artem/a.txt", delete),
+                "Upload in flight to the same location should be visible to the delete");
+
+        journal.end(put);
+        assertFalse(journal.isPendingTarget("uploads/artem/a.txt", delete));
+        journal.destroy();
+    }
+
+    @Test
+    void reopen_keepsUnfinishedIntentsAndDropsTornTail() throws IOException {
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        long finished = journal.begin(IntentJournal.Intent.delete(1L, "uploads/artem/a.txt"));
+        long[] open = journal.begin(List.of(
+                IntentJournal.Intent.put(2L, tempDir.resolve("upload-1.part"), "uploads/artem/b.txt", "artem/b.txt"),
+                IntentJournal.Intent.move(3L, "uploads/artem/c.txt", "artem/c.txt", "uploads/artem/d.txt", "artem/d.txt")));
+        journal.end(finished);
+        journal.destroy();
+
+        // сбой посреди записи: на диске осталось начало следующей записи
+        Path file = tempDir.resolve(".journal").resolve(IntentJournal.FILE_NAME);
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        IntentJournal reopened = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        assertEquals(List.of(open[0], open[1]), List.copyOf(reopened.recovered().keySet()));
+        assertEquals(IntentJournal.Operation.MOVE, reopened.recovered().get(open[1]).operation());
+        assertEquals("artem/c.txt", reopened.recovered().get(open[1]).fromKey());
+        assertTrue(reopened.pendingLocations().contains("uploads/artem/b.txt"));
+
+        // новые номера не пересекаются со старыми, а файл после открытия содержит только незавершённое
+        long next = reopened.begin(IntentJournal.Intent.delete(4L, "uploads/artem/e.txt"));
+        assertTrue(next > open[1]);
+        reopened.resolved(open[0]);
+        reopened.resolved(open[1]);
+        reopened.end(next);
+        reopened.destroy();
+        assertTrue(new IntentJournal(tempDir.toString(), 1024 * 1024).recovered().isEmpty());
+    }
+
+    @Test
+    void begin_concurrentWritersShareFsync() throws Exception {
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 4096);
+        int threads = 16;
+        int perThread = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        long id = journal.begin(IntentJournal.Intent.delete((long) i, "uploads/u" + thread + "/" + i));
+                        journal.end(id);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2L * threads * perThread, journal.getAppended());
+        assertTrue(journal.getSyncs() < threads * perThread,
+                "Group commit should need fewer fsyncs than intents: " + journal.getSyncs());
+        assertEquals(0, journal.pendingCount());
+        // max-bytes маленький: журнал сжимался по ходу работы и не растёт без предела
+        assertTrue(Files.size(tempDir.resolve(".journal").resolve(IntentJournal.FILE_NAME)) <= 4096 + 64);
+    }
+
+    @Test
+    void recover_revertsUncommittedPutAndFinishesCommittedDeleteAndMove() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(tempDir.toString());
+        FileRepository fileRepository = mock(FileRepository.class);
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+
+        // загрузка перенесена в хранилище, но строка не закоммичена
+        Path uncommitted = write(tempDir.resolve("artem").resolve("lost.txt"));
+        journal.begin(IntentJournal.Intent.put(1L, tempDir.resolve(".staging").resolve("upload-1.part"),
+                uncommitted.toString(), "artem/lost.txt"));
+        // загрузка закоммичена, а подготовленный файл до хранилища не дошёл
+        Path staged = write(tempDir.resolve(".staging").resolve("upload-2.part"));
+        String committed = storage.locate("artem/kept.txt");
+        journal.begin(IntentJournal.Intent.put(2L, staged, committed, "artem/kept.txt"));
+        // удаление закоммичено, файл остался
+        Path deleted = write(tempDir.resolve("artem").resolve("deleted.txt"));
+        journal.begin(IntentJournal.Intent.delete(3L, deleted.toString()));
+        // переименование откатилось после перемещения файла
+        Path moved = write(tempDir.resolve("artem").resolve("new.txt"));
+        String original = storage.locate("artem/old.txt");
+        journal.begin(IntentJournal.Intent.move(4L, original, "artem/old.txt", moved.toString(), "artem/new.txt"));
+        journal.destroy();
+
+        when(fileRepository.findById(any())).thenReturn(Optional.empty());
+        when(fileRepository.findById(2L)).thenReturn(Optional.of(entity(committed)));
+        when(fileRepository.findById(4L)).thenReturn(Optional.of(entity(original)));
+        when(fileRepository.existsByStoragePath(anyString())).thenReturn(false);
+
+        IntentJournal reopened = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        assertEquals(4, new IntentRecovery(reopened, fileRepository, storage).recover());
+
+        assertFalse(Files.exists(uncommitted));
+        assertTrue(Files.exists(Path.of(committed)));
+        assertFalse(Files.exists(staged));
+        assertFalse(Files.exists(deleted));
+        assertTrue(Files.exists(Path.of(original)));
+        assertFalse(Files.exists(moved));
+        assertTrue(reopened.recovered().isEmpty());
+        assertEquals(0, reopened.pendingCount());
+    }
+
+    @Test
+    void sweep_removesStaleUnreferencedFilesOnly() throws IOException {
+        FileRepository fileRepository = mock(FileRepository.class);
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+        Path referenced = stale(write(tempDir.resolve("artem").resolve("a.txt")));
+        Path orphan = stale(write(tempDir.resolve("artem").resolve("b.txt")));
+        Path fresh = write(tempDir.resolve("artem").resolve("c.txt"));
+        Path pending = stale(write(tempDir.resolve("artem").resolve("d.txt")));
+        Path leftover = stale(write(tempDir.resolve(".staging").resolve("upload-1.part")));
+        Path session = stale(write(tempDir.resolve(".sessions").resolve("s1").resolve("0.chunk")));
+        journal.begin(IntentJournal.Intent.delete(9L, pending.toString()));
+        when(fileRepository.findExistingStoragePaths(anyCollection())).thenReturn(List.of(referenced.toString()));
+
+        OrphanSweeper sweeper = new OrphanSweeper(fileRepository, journal, tempDir.toString(), "local", 1, 1000, false);
+        assertEquals(2, sweeper.sweep());
+
+        assertTrue(Files.exists(referenced));
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(fresh));
+        assertTrue(Files.exists(pending));
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(session));
+        assertEquals(1, sweeper.getOrphans());
+        assertEquals(1, sweeper.getTemporary());
+    }
+
+    private static Path write(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, "data");
+    }
+
+    private static Path stale(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+        return path;
+    }
+
+    private static FileEntity entity(String storagePath) {
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setStoragePath(storagePath);
+        return fileEntity;
+    }
+}
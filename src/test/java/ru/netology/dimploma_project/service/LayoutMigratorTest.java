@@ -0,0 +1,96 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.repository.FileRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class LayoutMigratorTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void migrate_linksRelocatesAndDropsOldPathOnNextRun() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(tempDir.toString());
+        FileRepository fileRepository = mock(FileRepository.class);
+        IntentJournal journal = new IntentJournal(tempDir.toString(), 1024 * 1024);
+
+        FileEntity moved = entity(1L, write("artem/a.txt"));
+        FileEntity renamed = entity(2L, write("artem/b.txt"));
+        FileEntity done = entity(3L, storage.locate(StorageLayout.shardedKey(3L)));
+        when(fileRepository.findStoredAfter(eq(0L), any(Pageable.class))).thenReturn(List.of(moved, renamed, done));
+        when(fileRepository.findStoredAfter(eq(3L), any(Pageable.class))).thenReturn(List.of());
+        Set<String> referenced = new HashSet<>();
+        when(fileRepository.relocate(eq(1L), anyString(), anyString())).thenAnswer(i -> {
+            referenced.add(i.getArgument(2));
+            return 1;
+        });
+        // строку 2 параллельно удалили
+        when(fileRepository.relocate(eq(2L), anyString(), anyString())).thenReturn(0);
+        when(fileRepository.existsByStoragePath(anyString())).thenAnswer(i -> referenced.contains(i.getArgument(0)));
+
+        LayoutMigrator migrator = new LayoutMigrator(fileRepository, storage, new StorageLayout("sharded"), journal, 100, 0);
+        assertEquals(1, migrator.migrate());
+
+        Path target = tempDir.resolve(StorageLayout.shardedKey(1L));
+        assertEquals("artem/a.txt", Files.readString(target));
+        // до следующего запуска старый адрес ещё читается
+        assertTrue(Files.exists(Path.of(moved.getStoragePath())));
+        assertFalse(Files.exists(tempDir.resolve(StorageLayout.shardedKey(2L))));
+        verify(fileRepository, never()).relocate(eq(3L), anyString(), anyString());
+        assertEquals(0, journal.pendingCount());
+
+        assertEquals(0, migrator.migrate());
+        assertFalse(Files.exists(Path.of(moved.getStoragePath())));
+        assertTrue(Files.exists(Path.of(renamed.getStoragePath())));
+        assertEquals(1, migrator.getMigrated());
+
+        // проход, в котором перенесён файл, проверяется ещё раз; пустой проход завершает перенос
+        when(fileRepository.findStoredAfter(eq(0L), any(Pageable.class))).thenReturn(List.of());
+        migrator.migrate();
+        migrator.migrate();
+        verify(fileRepository, times(3)).findStoredAfter(anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void shardedKey_spreadsConsecutiveIdsAcrossDirectories() {
+        Set<String> first = new HashSet<>();
+        Set<String> leaves = new HashSet<>();
+        for (long id = 1; id <= 4096; id++) {
+            String key = StorageLayout.shardedKey(id);
+            assertTrue(key.matches("objects/[0-9a-f]{2}/[0-9a-f]{2}/" + id), key);
+            first.add(key.substring(0, 10));
+            leaves.add(key.substring(0, 13));
+        }
+        assertEquals(256, first.size());
+        assertTrue(leaves.size() > 3000, "Leaf directories used: " + leaves.size());
+    }
+
+    private String write(String key) throws IOException {
+        Path path = tempDir.resolve(key);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, key).toString();
+    }
+
+    private static FileEntity entity(long id, String storagePath) {
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setId(id);
+        fileEntity.setStoragePath(storagePath);
+        return fileEntity;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalStorageBackendTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void putAndCopy_replaceTargetAtomicallyAndSyncPerPolicy() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(tempDir.toString(), "directory", 0);
+        String location = storage.put("artem/a.txt", staged("new"));
+        // файл, каталог artem и корень, в котором artem только что создан
+        assertEquals(3, storage.getSyncs());
+
+        Files.writeString(tempDir.resolve("artem").resolve("b.txt"), "old");
+        storage.copy(location, "artem/b.txt");
+        assertEquals("new", Files.readString(tempDir.resolve("artem").resolve("b.txt")));
+        assertEquals(5, storage.getSyncs());
+        // временная копия переименована, рядом с файлами ничего не осталось
+        try (Stream<Path> files = Files.list(tempDir.resolve("artem"))) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void batched_defersSyncToFlush() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(tempDir.toString(), "batched", 60_000);
+        try {
+            String location = storage.put("artem/a.txt", staged("data"));
+            storage.move(location, "artem/b.txt");
+            assertEquals(0, storage.getSyncs());
+
+            storage.flush();
+            // файл уже переименован и пропускается, сбрасываются каталоги artem и корень
+            assertEquals(2, storage.getSyncs());
+            storage.flush();
+            assertEquals(2, storage.getSyncs());
+        } finally {
+            storage.destroy();
+        }
+    }
+
+    @Test
+    void unknownPolicy_isRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LocalStorageBackend(tempDir.toString(), "always", 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LocalStorageBackend(tempDir.toString(), "batched", 0));
+    }
+
+    private Path staged(String content) throws IOException {
+        Path dir = Files.createDirectories(tempDir.resolve(".staging"));
+        return Files.writeString(Files.createTempFile(dir, "upload-", ".part"), content);
+    }
+}
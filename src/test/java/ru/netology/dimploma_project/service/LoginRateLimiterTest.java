@@ -0,0 +1,44 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoginRateLimiterTest {
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    @Test
+    void tryAcquire_burstThenRefillPerUsername() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, 6, 100, 600, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("artem", "10.0.0." + i));
+        }
+        // одно имя с разных адресов и в другом регистре — то же ведро
+        assertEquals(10, limiter.tryAcquire("ARTEM", "10.0.0.9"));
+        assertEquals(0, limiter.tryAcquire("other", "10.0.0.9"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, limiter.tryAcquire("artem", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("artem", "10.0.0.1") > 0);
+        assertEquals(2, limiter.getRejected());
+    }
+
+    @Test
+    void tryAcquire_limitsAddressAcrossUsernamesAndCleanupDropsFullBuckets() {
+        LoginRateLimiter limiter = new LoginRateLimiter(10, 10, 2, 60, now::get);
+
+        assertEquals(0, limiter.tryAcquire("a", "10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("b", "10.0.0.1"));
+        assertEquals(1, limiter.tryAcquire("c", "10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("c", "10.0.0.2"));
+        assertEquals(5, limiter.size());
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        limiter.cleanup();
+        assertEquals(0, limiter.size());
+    }
+}
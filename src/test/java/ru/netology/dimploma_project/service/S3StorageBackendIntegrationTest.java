@@ -0,0 +1,99 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.netology.dimploma_project.config.StorageConfig;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+public class S3StorageBackendIntegrationTest {
+    private static final String BUCKET = "files";
+
+    @Container
+    private static final MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2024-12-18T13-15-44Z");
+
+    private static S3Client s3;
+    private static S3StorageBackend storage;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void setUp() {
+        s3 = new StorageConfig().s3Client(minio.getS3URL(), "us-east-1", minio.getUserName(), minio.getPassword(), true);
+        s3.createBucket(CreateBucketRequest.builder().bucket(BUCKET).build());
+        storage = new S3StorageBackend(s3, BUCKET, S3StorageBackend.MIN_PART_SIZE, 4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        storage.destroy();
+        s3.close();
+    }
+
+    @Test
+    void put_smallFile_singleRequest() throws IOException {
+        byte[] data = "hello object storage".getBytes();
+        String location = storage.put("artem/a.txt", stage(data));
+
+        assertEquals("artem/a.txt", location);
+        assertEquals(data.length, storage.stat(location).size());
+        try (InputStream in = storage.get(location)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void put_largeFile_parallelMultipartAndRangedGet() throws IOException {
+        byte[] data = new byte[(int) (2.5 * S3StorageBackend.MIN_PART_SIZE)];
+        new Random(7).nextBytes(data);
+        Path staged = stage(data);
+        String location = storage.put("artem/big.bin", staged);
+
+        assertFalse(Files.exists(staged), "Staged file should be removed after upload");
+        assertEquals(data.length, storage.stat(location).size());
+        int offset = data.length - 1000;
+        try (InputStream in = storage.get(location, offset)) {
+            assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void copyMoveDelete() throws IOException {
+        byte[] data = "copy me".getBytes();
+        String source = storage.put("artem/src.txt", stage(data));
+
+        String copy = storage.copy(source, "artem/copy.txt");
+        String moved = storage.move(source, "artem/moved.txt");
+
+        assertThrows(NoSuchFileException.class, () -> storage.stat(source));
+        try (InputStream in = storage.get(moved)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        storage.delete(copy);
+        storage.delete(copy);
+        assertThrows(NoSuchFileException.class, () -> storage.get(copy));
+    }
+
+    private Path stage(byte[] data) throws IOException {
+        Path staged = Files.createTempFile(tempDir, "upload-", ".part");
+        Files.write(staged, data);
+        return staged;
+    }
+}
@@ -0,0 +1,106 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import ru.netology.dimploma_project.dto.StorageUsageDto;
+import ru.netology.dimploma_project.model.FileEntity;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.BlobRepository;
+import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.UserRepository;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// сравнение тысяч одновременных медленных скачиваний на пуле платформенных потоков
+// размером с пул Tomcat по умолчанию и на виртуальных потоках; в обычный прогон не входит, запуск: mvn -Pload test
+@Tag("load")
+public class SlowClientLoadTest {
+    private static final int CLIENTS = 2000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int FILE_SIZE = 16 * 1024;
+    private static final int CLIENT_CHUNK = 4 * 1024;
+    private static final long CLIENT_DELAY_MS = 50;
+
+    private FileServiceLocal fileService;
+    private User owner;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        FileRepository fileRepository = mock(FileRepository.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findUsage(any())).thenReturn(Optional.of(new StorageUsageDto(0L, null)));
+        when(userRepository.charge(any(), anyLong(), anyLong())).thenReturn(1);
+        fileService = new FileServiceLocalBuilder(fileRepository, mock(BlobRepository.class), userRepository,
+                tempDir.toString()).build();
+        owner = new User();
+        owner.setUsername("artem");
+
+        when(fileRepository.save(any(FileEntity.class))).thenAnswer(i -> i.getArgument(0));
+        fileService.uploadFile("big.bin", new byte[FILE_SIZE], owner);
+
+        FileEntity fileEntity = new FileEntity();
+        fileEntity.setFilename("big.bin");
+        fileEntity.setOwner(owner);
+        fileEntity.setStoragePath(tempDir.resolve("artem").resolve("big.bin").toString());
+        when(fileRepository.findByOwnerAndFilename(eq(owner), eq("big.bin"))).thenReturn(Optional.of(fileEntity));
+    }
+
+    @Test
+    void slowClients_virtualThreadsDoNotQueueBehindWorkerPool() throws Exception {
+        long platformMs = run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS));
+        long virtualMs = run(Executors.newVirtualThreadPerTaskExecutor());
+
+        assertTrue(virtualMs < platformMs, String.format(
+                "Virtual threads should not be limited by the worker pool size: %d clients, %d ms virtual vs %d ms on %d platform threads",
+                CLIENTS, virtualMs, platformMs, TOMCAT_MAX_THREADS));
+    }
+
+    private long run(ExecutorService executor) throws Exception {
+        long start = System.nanoTime();
+        try (executor) {
+            List<Future<Long>> downloads = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                downloads.add(executor.submit(this::slowDownload));
+            }
+            for (Future<Long> download : downloads) {
+                assertEquals(FILE_SIZE, download.get(2, TimeUnit.MINUTES));
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // клиент забирает ответ кусками и делает паузу после каждого, удерживая поток обработки запроса
+    private long slowDownload() throws Exception {
+        Resource resource = fileService.downloadFileAsResource("big.bin", owner);
+        byte[] buffer = new byte[CLIENT_CHUNK];
+        long total = 0;
+        try (InputStream in = resource.getInputStream()) {
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                total += read;
+                Thread.sleep(CLIENT_DELAY_MS);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,42 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.netology.dimploma_project.repository.TokenRepository;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TokenReaperTest {
+    private TokenRepository tokenRepository;
+    private TokenReaper tokenReaper;
+
+    @BeforeEach
+    void setUp() {
+        tokenRepository = mock(TokenRepository.class);
+        tokenReaper = new TokenReaper(tokenRepository, 100);
+    }
+
+    @Test
+    void reap_deletesInBatchesUntilShortBatch() {
+        when(tokenRepository.deleteExpiredBatch(any(Instant.class), eq(100))).thenReturn(100, 100, 7);
+
+        assertEquals(207, tokenReaper.reap());
+
+        verify(tokenRepository, times(3)).deleteExpiredBatch(any(Instant.class), eq(100));
+        assertEquals(207, tokenReaper.getReclaimed());
+        assertEquals(1, tokenReaper.getRuns());
+    }
+
+    @Test
+    void reap_nothingToDelete_singleQuery() {
+        when(tokenRepository.deleteExpiredBatch(any(Instant.class), eq(100))).thenReturn(0);
+
+        assertEquals(0, tokenReaper.reap());
+        verify(tokenRepository, times(1)).deleteExpiredBatch(any(Instant.class), eq(100));
+    }
+}
@@ -0,0 +1,182 @@
+package ru.netology.dimploma_project.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.netology.dimploma_project.dto.StorageUsageDto;
+import ru.netology.dimploma_project.model.UploadSession;
+import ru.netology.dimploma_project.model.User;
+import ru.netology.dimploma_project.repository.FileRepository;
+import ru.netology.dimploma_project.repository.UploadSessionRepository;
+import ru.netology.dimploma_project.repository.UserRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UploadSessionServiceTest {
+    private UploadSessionRepository sessionRepository;
+    private FileRepository fileRepository;
+    private FileService fileService;
+    private UserRepository userRepository;
+    private UploadSessionService uploadSessionService;
+    private User owner;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        sessionRepository = mock(UploadSessionRepository.class);
+        fileRepository = mock(FileRepository.class);
+        fileService = mock(FileService.class);
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findUsage(any())).thenReturn(Optional.of(new StorageUsageDto(0L, null)));
+        uploadSessionService = new UploadSessionService(sessionRepository, fileRepository, fileService,
+                new QuotaService(userRepository, 0), tempDir.toString(), 8, 24);
+
+        owner = new User();
+        owner.setId(1L);
+        owner.setUsername("artem");
+
+        when(fileRepository.findByOwnerAndFilename(any(), any())).thenReturn(Optional.empty());
+        when(sessionRepository.save(any(UploadSession.class))).thenAnswer(i -> {
+            UploadSession session = i.getArgument(0);
+            when(sessionRepository.findById(session.getId())).thenReturn(Optional.of(session));
+            return session;
+        });
+    }
+
+    @Test
+    void chunksInAnyOrder_areAssembledOnComplete() throws Exception {
+        UploadSession session = uploadSessionService.createSession("big.txt", 3, owner);
+
+        uploadSessionService.writeChunk(session.getId(), 2, stream("ghi"), owner);
+        uploadSessionService.writeChunk(session.getId(), 0, stream("abc"), owner);
+        assertEquals(List.of(0, 2), uploadSessionService.getReceivedChunks(session.getId(), owner));
+        assertThrows(IllegalArgumentException.class, () -> uploadSessionService.complete(session.getId(), owner),
+                "Session with missing chunks should not complete");
+
+        uploadSessionService.writeChunk(session.getId(), 1, stream("xxx"), owner);
+        uploadSessionService.writeChunk(session.getId(), 1, stream("def"), owner);
+        assertEquals(List.of(0, 1, 2), uploadSessionService.getReceivedChunks(session.getId(), owner));
+
+        AtomicReference<String> assembled = new AtomicReference<>();
+        doAnswer(i -> {
+            try (InputStream in = i.getArgument(1)) {
+                assembled.set(new String(in.readAllBytes()));
+            }
+            return null;
+        }).when(fileService).uploadFile(eq("big.txt"), any(InputStream.class), eq(owner));
+
+        uploadSessionService.complete(session.getId(), owner);
+
+        assertEquals("abcdefghi", assembled.get(), "Chunks should be concatenated in index order");
+        verify(sessionRepository).delete(session);
+        assertFalse(Files.exists(tempDir.resolve(".sessions").resolve(session.getId())),
+                "Chunk directory should be removed after completion");
+    }
+
+    @Test
+    void writeChunk_rejectsForeignSessionInvalidIndexAndOversizedChunk() {
+        UploadSession session = uploadSessionService.createSession("big.txt", 2, owner);
+
+        User stranger = new User();
+        stranger.setId(2L);
+        stranger.setUsername("vasya");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.writeChunk(session.getId(), 0, stream("abc"), stranger));
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.writeChunk(session.getId(), 2, stream("abc"), owner));
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.writeChunk(session.getId(), 0, stream("123456789"), owner));
+        assertEquals(List.of(), uploadSessionService.getReceivedChunks(session.getId(), owner),
+                "Rejected chunks should not be recorded");
+    }
+
+    @Test
+    void writeChunk_countsReceivedChunksAgainstQuota() {
+        when(userRepository.findUsage(1L)).thenReturn(Optional.of(new StorageUsageDto(4L, 10L)));
+        UploadSession session = uploadSessionService.createSession("big.txt", 3, owner);
+
+        uploadSessionService.writeChunk(session.getId(), 0, stream("abc"), owner);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.writeChunk(session.getId(), 1, stream("defg"), owner));
+        assertEquals(QuotaService.QUOTA_EXCEEDED, e.getMessage());
+
+        uploadSessionService.writeChunk(session.getId(), 0, stream("abcdef"), owner);
+        assertEquals(List.of(0), uploadSessionService.getReceivedChunks(session.getId(), owner),
+                "Re-sent chunk replaces the old one instead of counting twice");
+    }
+
+    @Test
+    void abort_doesNotWaitForChunkInFlight_andDiscardsIt() throws Exception {
+        UploadSession session = uploadSessionService.createSession("big.txt", 2, owner);
+        doAnswer(i -> {
+            when(sessionRepository.findById(session.getId())).thenReturn(Optional.empty());
+            return null;
+        }).when(sessionRepository).delete(session);
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        InputStream slow = new InputStream() {
+            private int sent;
+
+            @Override
+            public int read() throws IOException {
+                if (sent == 0) {
+                    reading.countDown();
+                    try {
+                        proceed.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return sent < 3 ? 'a' + sent++ : -1;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> write = executor.submit(() -> uploadSessionService.writeChunk(session.getId(), 0, slow, owner));
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            Future<?> abort = executor.submit(() -> uploadSessionService.abort(session.getId(), owner));
+            abort.get(5, TimeUnit.SECONDS);
+
+            proceed.countDown();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(5, TimeUnit.SECONDS),
+                    "Chunk received after abort should be rejected");
+            assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Path dir = tempDir.resolve(".sessions").resolve(session.getId());
+        assertFalse(Files.exists(dir), "Aborted session should leave no chunks behind");
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.writeChunk(session.getId(), 1, stream("def"), owner));
+        assertFalse(Files.exists(dir));
+    }
+
+    private static InputStream stream(String value) {
+        return new ByteArrayInputStream(value.getBytes());
+    }
+}